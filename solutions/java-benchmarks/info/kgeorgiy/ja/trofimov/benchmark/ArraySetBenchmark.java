@@ -0,0 +1,415 @@
+package info.kgeorgiy.ja.trofimov.benchmark;
+
+import info.kgeorgiy.ja.trofimov.arrayset.ArraySet;
+import info.kgeorgiy.ja.trofimov.arrayset.IntArraySet;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.function.IntFunction;
+import java.util.function.IntUnaryOperator;
+import java.util.stream.IntStream;
+
+/*
+Benchmarks of array sets against `TreeSet`, `ConcurrentSkipListSet` and plain sorted arrays,
+run with the compiled solutions on the class path as
+`java -cp <solutions>:<benchmarks> info.kgeorgiy.ja.trofimov.benchmark.ArraySetBenchmark
+[construction|lookups|iteration|views|all] [size...]`.
+
+Every case, a cell of a table, is measured in a JVM of its own, started with the options of this one,
+so the JIT profiles of one case don't slow down another. There it is warmed up and then timed
+over several rounds; prints the best nanoseconds and the average bytes allocated by the thread
+per operation, or per element for construction and iteration.
+Lookups use a fixed array of random probes, half of which are present in the set.
+Tree sets above TREE_LIMIT elements don't fit a usual heap and are skipped, shown as `-`;
+sizes up to 10^8 can be given for the rest with a large enough -Xmx.
+ */
+public class ArraySetBenchmark {
+    private static final int PROBES = 1 << 20;
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int ROUNDS = 10;
+    // a construction is a whole operation, so it takes fewer rounds
+    private static final int BUILD_WARMUP_ROUNDS = 2;
+    private static final int BUILD_ROUNDS = 5;
+    private static final int TREE_LIMIT = 2_000_000;
+    private static final int[] DEFAULT_SIZES = {10, 1_000, 100_000, 1_000_000, 10_000_000};
+    private static final List<String> SECTIONS = List.of("construction", "lookups", "iteration", "views", "all");
+    // arguments of a JVM measuring a single case
+    private static final String CASE = "--case";
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    // rows of a table for a set size, every row has a case per column
+    private record Table(String section, String type, String operation, List<String> columns,
+                         IntFunction<List<Row>> rows) {
+    }
+
+    private static final List<Table> TABLES = List.of(
+            new Table("construction", "construction", "input",
+                    List.of("ArraySet", "TreeSet", "SkipList", "int[] sort"), ArraySetBenchmark::construction),
+            new Table("lookups", "Integer", "operation",
+                    List.of("ArraySet", "TreeSet", "SkipList", "int[] search"), ArraySetBenchmark::objectLookups),
+            new Table("lookups", "int", "operation",
+                    List.of("binary", "eytzinger", "interpolate"), ArraySetBenchmark::intLookups),
+            new Table("lookups", "String", "operation",
+                    List.of("comparator", "natural", "prefixes"), ArraySetBenchmark::stringLookups),
+            new Table("iteration", "iteration", "order",
+                    List.of("ArraySet", "TreeSet", "SkipList", "int[] loop"), ArraySetBenchmark::iteration),
+            new Table("views", "views", "chain",
+                    List.of("ArraySet", "TreeSet", "SkipList"), ArraySetBenchmark::views)
+    );
+
+    /*
+    A case is called `operations` times per round; its measurement is divided by `elements`
+    when every operation goes over all elements of the set. Null cases are skipped.
+     */
+    private record Row(String name, int warmupRounds, int rounds, int operations, int elements,
+                       IntUnaryOperator... cases) {
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length > 0 && args[0].equals(CASE)) {
+            measureCase(args);
+            return;
+        }
+        boolean named = args.length > 0 && !Character.isDigit(args[0].charAt(0));
+        String section = named ? args[0] : "all";
+        if (!SECTIONS.contains(section)) {
+            System.err.println("Usage: ArraySetBenchmark [" + String.join("|", SECTIONS) + "] [size...]");
+            return;
+        }
+        int[] sizes = args.length > (named ? 1 : 0)
+                ? Arrays.stream(args).skip(named ? 1 : 0).mapToInt(Integer::parseInt).toArray()
+                : DEFAULT_SIZES;
+
+        for (int table = 0; table < TABLES.size(); table++) {
+            if (section.equals(TABLES.get(table).section()) || section.equals("all")) {
+                run(table, sizes);
+            }
+        }
+    }
+
+    // the number of rows is only known to the cases, so the first case of the first row reports it
+    private static void run(int table, int[] sizes) throws IOException, InterruptedException {
+        List<String> columns = TABLES.get(table).columns();
+        header(TABLES.get(table).type(), TABLES.get(table).operation(), columns);
+        for (int size : sizes) {
+            int rows = 1;
+            for (int row = 0; row < rows; row++) {
+                String name = null;
+                Measurement[] measurements = new Measurement[columns.size()];
+                for (int column = 0; column < columns.size(); column++) {
+                    String[] result = fork(table, size, row, column);
+                    rows = Integer.parseInt(result[0]);
+                    name = result[1];
+                    measurements[column] = result[2].equals("-")
+                            ? null
+                            : new Measurement(Double.parseDouble(result[2]), Double.parseDouble(result[3]));
+                }
+                print(size, name, measurements);
+            }
+        }
+    }
+
+    // runs a case in a new JVM with the class path and the options of this one
+    private static String[] fork(int table, int size, int row, int column) throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>();
+        command.add(ProcessHandle.current().info().command().orElse("java"));
+        command.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+        command.addAll(List.of("-cp", System.getProperty("java.class.path"), ArraySetBenchmark.class.getName(),
+                CASE, Integer.toString(table), Integer.toString(size), Integer.toString(row), Integer.toString(column)));
+        Process process = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+        String output = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8).trim();
+        int code = process.waitFor();
+        if (code != 0) {
+            throw new IOException("Case " + column + " of row " + row + " of size " + size + " exited with " + code);
+        }
+        return output.split(" ");
+    }
+
+    // prints the number of rows, the name of the row and the measurement of the case or `-`
+    private static void measureCase(String[] args) {
+        int table = Integer.parseInt(args[1]);
+        int size = Integer.parseInt(args[2]);
+        List<Row> rows = TABLES.get(table).rows().apply(size);
+        Row row = rows.get(Integer.parseInt(args[3]));
+        IntUnaryOperator operation = row.cases()[Integer.parseInt(args[4])];
+        String result = "-";
+        if (operation != null) {
+            Measurement measurement = measure(row.warmupRounds(), row.rounds(), row.operations(), operation)
+                    .per(row.elements());
+            result = measurement.nanos() + " " + measurement.bytes();
+        }
+        System.out.println(rows.size() + " " + row.name() + " " + result);
+    }
+
+    // the case if tree sets of this size fit the heap, null otherwise
+    private static IntUnaryOperator tree(int size, IntUnaryOperator operation) {
+        return size <= TREE_LIMIT ? operation : null;
+    }
+
+    private static List<Integer> boxed(int[] values) {
+        return Arrays.stream(values).boxed().toList();
+    }
+
+    /*
+    Builds sets of sorted, shuffled and duplicate-heavy input, where every value repeats about 16 times.
+    The array case only sorts a copy of the input, the lower bound for a sorting constructor.
+     */
+    private static List<Row> construction(int size) {
+        Random random = new Random(size);
+        int[][] inputs = {
+                IntStream.range(0, size).map(i -> 2 * i).toArray(),
+                random.ints(size, 0, 2 * size).toArray(),
+                random.ints(size, 0, Math.max(1, size / 16)).toArray()
+        };
+        String[] names = {"sorted", "random", "duplicates"};
+        List<Row> rows = new ArrayList<>();
+        for (int k = 0; k < inputs.length; k++) {
+            int[] values = inputs[k];
+            List<Integer> list = boxed(values);
+            rows.add(new Row(names[k], BUILD_WARMUP_ROUNDS, BUILD_ROUNDS, 1, size,
+                    i -> new ArraySet<>(list).size(),
+                    tree(size, i -> new TreeSet<>(list).size()),
+                    tree(size, i -> new ConcurrentSkipListSet<>(list).size()),
+                    i -> {
+                        int[] copy = values.clone();
+                        Arrays.sort(copy);
+                        return copy.length;
+                    }));
+        }
+        return rows;
+    }
+
+    private static List<Row> objectLookups(int size) {
+        Random random = new Random(size);
+        int[] elements = IntStream.range(0, size).map(i -> 2 * i).toArray();
+        int[] probes = random.ints(PROBES, 0, 2 * size).toArray();
+        Integer[] boxedProbes = Arrays.stream(probes).boxed().toArray(Integer[]::new);
+
+        ArraySet<Integer> arraySet = new ArraySet<>(boxed(elements));
+        NavigableSet<Integer> treeSet = size <= TREE_LIMIT ? new TreeSet<>(arraySet) : null;
+        NavigableSet<Integer> skipList = size <= TREE_LIMIT ? new ConcurrentSkipListSet<>(arraySet) : null;
+        return List.of(
+                lookups("contains", PROBES,
+                        i -> arraySet.contains(boxedProbes[i]) ? 1 : 0,
+                        tree(size, i -> treeSet.contains(boxedProbes[i]) ? 1 : 0),
+                        tree(size, i -> skipList.contains(boxedProbes[i]) ? 1 : 0),
+                        i -> Arrays.binarySearch(elements, probes[i]) >= 0 ? 1 : 0),
+                lookups("floor", PROBES,
+                        i -> Objects.requireNonNullElse(arraySet.floor(boxedProbes[i]), -1),
+                        tree(size, i -> Objects.requireNonNullElse(treeSet.floor(boxedProbes[i]), -1)),
+                        tree(size, i -> Objects.requireNonNullElse(skipList.floor(boxedProbes[i]), -1)),
+                        i -> {
+                            int search = Arrays.binarySearch(elements, probes[i]);
+                            int index = search >= 0 ? search : -2 - search;
+                            return index >= 0 ? elements[index] : -1;
+                        }),
+                lookups("ceiling", PROBES,
+                        i -> Objects.requireNonNullElse(arraySet.ceiling(boxedProbes[i]), -1),
+                        tree(size, i -> Objects.requireNonNullElse(treeSet.ceiling(boxedProbes[i]), -1)),
+                        tree(size, i -> Objects.requireNonNullElse(skipList.ceiling(boxedProbes[i]), -1)),
+                        i -> {
+                            int search = Arrays.binarySearch(elements, probes[i]);
+                            int index = search >= 0 ? search : -1 - search;
+                            return index < size ? elements[index] : -1;
+                        }));
+    }
+
+    private static List<Row> intLookups(int size) {
+        Random random = new Random(size);
+        int[] elements = new int[size];
+        for (int i = 0; i < size; i++) {
+            elements[i] = 2 * i;
+        }
+        int[] probes = random.ints(PROBES, 0, 2 * size).toArray();
+
+        IntArraySet plain = new IntArraySet(elements);
+        IntArraySet eytzinger = plain.withEytzingerLayout();
+        IntArraySet interpolation = plain.withInterpolationSearch();
+        return List.of(
+                lookups("contains", probes,
+                        probe -> plain.contains(probe) ? 1 : 0,
+                        probe -> eytzinger.contains(probe) ? 1 : 0,
+                        probe -> interpolation.contains(probe) ? 1 : 0),
+                lookups("floor", probes,
+                        probe -> plain.floor(probe, -1),
+                        probe -> eytzinger.floor(probe, -1),
+                        probe -> interpolation.floor(probe, -1)),
+                lookups("ceiling", probes,
+                        probe -> plain.ceiling(probe, -1),
+                        probe -> eytzinger.ceiling(probe, -1),
+                        probe -> interpolation.ceiling(probe, -1)));
+    }
+
+    /*
+    Compares the generic search through a comparator with the loop specialized for String
+    and with the cached prefixes. Keys are random base-36 strings of 8 to 16 chars.
+     */
+    private static List<Row> stringLookups(int size) {
+        Random random = new Random(size);
+        List<String> elements = new ArrayList<>(size);
+        String[] keys = new String[2 * size];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = randomString(random);
+            if (i % 2 == 0) {
+                elements.add(keys[i]);
+            }
+        }
+        // string searches are an order slower, so fewer probes keep the rounds short
+        String[] probes = new String[PROBES / 8];
+        for (int i = 0; i < probes.length; i++) {
+            probes[i] = keys[random.nextInt(keys.length)];
+        }
+
+        ArraySet<String> comparator = new ArraySet<>(elements, Comparator.naturalOrder());
+        ArraySet<String> natural = new ArraySet<>(elements);
+        ArraySet<String> prefixes = natural.withStringPrefixes();
+        return List.of(
+                lookups("contains", probes.length,
+                        i -> comparator.contains(probes[i]) ? 1 : 0,
+                        i -> natural.contains(probes[i]) ? 1 : 0,
+                        i -> prefixes.contains(probes[i]) ? 1 : 0),
+                lookups("floor", probes.length,
+                        i -> Objects.requireNonNullElse(comparator.floor(probes[i]), "").length(),
+                        i -> Objects.requireNonNullElse(natural.floor(probes[i]), "").length(),
+                        i -> Objects.requireNonNullElse(prefixes.floor(probes[i]), "").length()));
+    }
+
+    private static String randomString(Random random) {
+        char[] chars = new char[8 + random.nextInt(9)];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = Character.forDigit(random.nextInt(36), 36);
+        }
+        return new String(chars);
+    }
+
+    // whole passes, enough of them to make a round of about PROBES elements
+    private static List<Row> iteration(int size) {
+        int[] elements = IntStream.range(0, size).toArray();
+        ArraySet<Integer> arraySet = new ArraySet<>(boxed(elements));
+        NavigableSet<Integer> treeSet = size <= TREE_LIMIT ? new TreeSet<>(arraySet) : null;
+        NavigableSet<Integer> skipList = size <= TREE_LIMIT ? new ConcurrentSkipListSet<>(arraySet) : null;
+        int passes = Math.max(1, PROBES / size);
+        return List.of(
+                new Row("ascending", WARMUP_ROUNDS, ROUNDS, passes, size,
+                        i -> sum(arraySet),
+                        tree(size, i -> sum(treeSet)),
+                        tree(size, i -> sum(skipList)),
+                        i -> {
+                            int sum = 0;
+                            for (int element : elements) {
+                                sum += element;
+                            }
+                            return sum;
+                        }),
+                new Row("descending", WARMUP_ROUNDS, ROUNDS, passes, size,
+                        i -> sum(arraySet.descendingSet()),
+                        tree(size, i -> sum(treeSet.descendingSet())),
+                        tree(size, i -> sum(skipList.descendingSet())),
+                        i -> {
+                            int sum = 0;
+                            for (int j = elements.length - 1; j >= 0; j--) {
+                                sum += elements[j];
+                            }
+                            return sum;
+                        }));
+    }
+
+    private static int sum(Iterable<Integer> elements) {
+        int sum = 0;
+        for (int element : elements) {
+            sum += element;
+        }
+        return sum;
+    }
+
+    // a chain of views over a quarter of the set starting at a random element, then a lookup in the last one
+    private static List<Row> views(int size) {
+        Random random = new Random(size);
+        int[] elements = IntStream.range(0, size).map(i -> 2 * i).toArray();
+        Integer[] low = random.ints(PROBES, 0, 2 * size).boxed().toArray(Integer[]::new);
+        Integer[] high = Arrays.stream(low).map(value -> value + size / 2).toArray(Integer[]::new);
+
+        ArraySet<Integer> arraySet = new ArraySet<>(boxed(elements));
+        NavigableSet<Integer> treeSet = size <= TREE_LIMIT ? new TreeSet<>(arraySet) : null;
+        NavigableSet<Integer> skipList = size <= TREE_LIMIT ? new ConcurrentSkipListSet<>(arraySet) : null;
+        return List.of(lookups("sub-desc", PROBES,
+                i -> chain(arraySet, low[i], high[i]),
+                tree(size, i -> chain(treeSet, low[i], high[i])),
+                tree(size, i -> chain(skipList, low[i], high[i]))));
+    }
+
+    private static int chain(NavigableSet<Integer> set, Integer low, Integer high) {
+        NavigableSet<Integer> view = set.tailSet(low, true).headSet(high, false).descendingSet();
+        return Objects.requireNonNullElse(view.ceiling(high), -1);
+    }
+
+    private static Row lookups(String name, int[] probes, IntUnaryOperator... cases) {
+        return lookups(name, probes.length, Arrays.stream(cases)
+                .map(operation -> (IntUnaryOperator) i -> operation.applyAsInt(probes[i]))
+                .toArray(IntUnaryOperator[]::new));
+    }
+
+    // every case is called with the indices of all probes
+    private static Row lookups(String name, int probes, IntUnaryOperator... cases) {
+        return new Row(name, WARMUP_ROUNDS, ROUNDS, probes, 1, cases);
+    }
+
+    private static void header(String type, String operation, List<String> cases) {
+        System.out.printf("%n%-12s %-10s", type, operation);
+        for (String name : cases) {
+            System.out.printf(" %20s", name);
+        }
+        System.out.printf("%n%-23s", "");
+        for (int i = 0; i < cases.size(); i++) {
+            System.out.printf(" %12s %7s", "ns", "B");
+        }
+        System.out.println();
+    }
+
+    private static void print(int size, String name, Measurement... measurements) {
+        System.out.printf("%-12d %-10s", size, name);
+        for (Measurement measurement : measurements) {
+            if (measurement == null) {
+                System.out.printf(" %20s", "-");
+            } else {
+                System.out.printf(" %12.1f %7.1f", measurement.nanos(), measurement.bytes());
+            }
+        }
+        System.out.println();
+    }
+
+    private record Measurement(double nanos, double bytes) {
+        Measurement per(int count) {
+            return new Measurement(nanos / Math.max(1, count), bytes / Math.max(1, count));
+        }
+    }
+
+    // the best time of a round and the average allocation per operation
+    private static Measurement measure(int warmupRounds, int rounds, int operations, IntUnaryOperator operation) {
+        long best = Long.MAX_VALUE;
+        long allocated = 0;
+        int sink = 0;
+        for (int round = 0; round < warmupRounds + rounds; round++) {
+            long bytes = THREADS.getCurrentThreadAllocatedBytes();
+            long start = System.nanoTime();
+            for (int i = 0; i < operations; i++) {
+                sink += operation.applyAsInt(i);
+            }
+            long time = System.nanoTime() - start;
+            if (round >= warmupRounds) {
+                best = Math.min(best, time);
+                allocated += THREADS.getCurrentThreadAllocatedBytes() - bytes;
+            }
+        }
+        // keeps the results alive
+        if (sink == 42) {
+            System.out.print("");
+        }
+        return new Measurement((double) best / operations, (double) allocated / rounds / operations);
+    }
+}
@@ -0,0 +1,383 @@
+package info.kgeorgiy.ja.trofimov.arrayset;
+
+import java.util.*;
+import java.util.function.Consumer;
+
+/*
+Navigation and views of an immutable set stored as a sorted array.
+A set is the range [from, to) of its array, iterated backwards if `reversed`.
+Views share the array and only change the range and the direction,
+so a chain of views is still a single flat object.
+
+Subclasses own the array. All indices passed to and returned from the helpers
+are indices in that array, in ascending order.
+ */
+abstract class AbstractArraySet<T> extends AbstractSet<T> implements NavigableSet<T> {
+    final int from;
+    final int to;
+    final boolean reversed;
+    // ascending order of the array, null for natural order
+    final Comparator<? super T> comparator;
+    // order of this view, returned by comparator()
+    private final Comparator<? super T> viewComparator;
+
+    AbstractArraySet(int from, int to, boolean reversed,
+                     Comparator<? super T> comparator, Comparator<? super T> viewComparator) {
+        this.from = from;
+        this.to = to;
+        this.reversed = reversed;
+        this.comparator = comparator;
+        this.viewComparator = viewComparator;
+    }
+
+    abstract T elementAt(int index);
+
+    /*
+    Returns index of value in [from, to) or `-(insertion point) - 1`, like `Arrays.binarySearch`.
+     */
+    abstract int binarySearch(Object value);
+
+    abstract AbstractArraySet<T> view(int from, int to, boolean reversed, Comparator<? super T> viewComparator);
+
+    private AbstractArraySet<T> subView(int from, int to) {
+        return view(from, Math.max(from, to), reversed, viewComparator);
+    }
+
+    @SuppressWarnings("unchecked")
+    static int compare(Object obj1, Object obj2, Comparator<Object> comparator) {
+        return comparator != null ? comparator.compare(obj1, obj2) : ((Comparable<Object>) obj1).compareTo(obj2);
+    }
+
+    @SuppressWarnings("unchecked")
+    int compare(T obj1, T obj2) {
+        return compare(obj1, obj2, (Comparator<Object>) comparator);
+    }
+
+    void checkNotEmpty() {
+        if (isEmpty()) {
+            throw new NoSuchElementException("List is empty");
+        }
+    }
+
+    boolean inRange(int index) {
+        return index >= from && index < to;
+    }
+
+    T getValueOrNull(int index) {
+        return inRange(index) ? elementAt(index) : null;
+    }
+
+    // min index: e >= value, by a binarySearch result
+    static int lowerBound(int searchResult) {
+        return searchResult >= 0 ? searchResult : (-1 - searchResult);
+    }
+
+    // min index: e > value, by a binarySearch result
+    static int upperBound(int searchResult) {
+        return searchResult >= 0 ? searchResult + 1 : (-1 - searchResult);
+    }
+
+    /*
+    Indices of lower, floor, ceiling and higher by a binarySearch result; may be out of range.
+    Descending view swaps the directions:
+    its lower is the ascending higher, its floor is the ascending ceiling, and so on.
+     */
+    int lowerIndex(int searchResult) {
+        return reversed ? upperBound(searchResult) : lowerBound(searchResult) - 1;
+    }
+
+    int floorIndex(int searchResult) {
+        return reversed ? lowerBound(searchResult) : upperBound(searchResult) - 1;
+    }
+
+    int ceilingIndex(int searchResult) {
+        return reversed ? upperBound(searchResult) - 1 : lowerBound(searchResult);
+    }
+
+    int higherIndex(int searchResult) {
+        return reversed ? lowerBound(searchResult) - 1 : upperBound(searchResult);
+    }
+
+    int firstIndex() {
+        return reversed ? to - 1 : from;
+    }
+
+    int lastIndex() {
+        return reversed ? from : to - 1;
+    }
+
+    // max e: e < value
+    @Override
+    public T lower(T value) {
+        return getValueOrNull(lowerIndex(binarySearch(value)));
+    }
+
+    // max e: e <= value
+    @Override
+    public T floor(T value) {
+        return getValueOrNull(floorIndex(binarySearch(value)));
+    }
+
+    // min e: e >= value
+    @Override
+    public T ceiling(T value) {
+        return getValueOrNull(ceilingIndex(binarySearch(value)));
+    }
+
+    // min e: e > value
+    @Override
+    public T higher(T value) {
+        return getValueOrNull(higherIndex(binarySearch(value)));
+    }
+
+    @Override
+    public T pollFirst() {
+        throw new UnsupportedOperationException("pollFirst is not supported");
+    }
+
+    @Override
+    public T pollLast() {
+        throw new UnsupportedOperationException("pollLast is not supported");
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        return new ArrayIterator(reversed);
+    }
+
+    @Override
+    public NavigableSet<T> descendingSet() {
+        return view(from, to, !reversed, reversed ? comparator : Collections.reverseOrder(comparator));
+    }
+
+    @Override
+    public Iterator<T> descendingIterator() {
+        return new ArrayIterator(!reversed);
+    }
+
+    class ArrayIterator implements Iterator<T> {
+        private final boolean backwards;
+        int index;
+
+        ArrayIterator(boolean backwards) {
+            this.backwards = backwards;
+            this.index = backwards ? to - 1 : from;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return backwards ? index >= from : index < to;
+        }
+
+        int nextIndex() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            int current = index;
+            index += backwards ? -1 : 1;
+            return current;
+        }
+
+        @Override
+        public T next() {
+            return elementAt(nextIndex());
+        }
+    }
+
+    @Override
+    public Spliterator<T> spliterator() {
+        return new ArraySpliterator(from, to);
+    }
+
+    /*
+    Splits the remaining range of the array in halves, so parallel streams get balanced parts.
+    The prefix in the encounter order is split off, that is the upper half for a descending view.
+     */
+    class ArraySpliterator implements Spliterator<T> {
+        int low;
+        int high;
+
+        ArraySpliterator(int low, int high) {
+            this.low = low;
+            this.high = high;
+        }
+
+        ArraySpliterator split(int low, int high) {
+            return new ArraySpliterator(low, high);
+        }
+
+        int nextIndex() {
+            return reversed ? --high : low++;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super T> action) {
+            Objects.requireNonNull(action);
+            if (low >= high) {
+                return false;
+            }
+            action.accept(elementAt(nextIndex()));
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super T> action) {
+            Objects.requireNonNull(action);
+            while (low < high) {
+                action.accept(elementAt(nextIndex()));
+            }
+        }
+
+        @Override
+        public ArraySpliterator trySplit() {
+            int middle = (low + high) >>> 1;
+            if (middle == low) {
+                return null;
+            }
+            ArraySpliterator prefix;
+            if (reversed) {
+                prefix = split(middle, high);
+                high = middle;
+            } else {
+                prefix = split(low, middle);
+                low = middle;
+            }
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return high - low;
+        }
+
+        @Override
+        public int characteristics() {
+            // natural order doesn't allow nulls, a comparator may
+            return ORDERED | SORTED | DISTINCT | SIZED | SUBSIZED | IMMUTABLE | (comparator == null ? NONNULL : 0);
+        }
+
+        @Override
+        public Comparator<? super T> getComparator() {
+            return viewComparator;
+        }
+    }
+
+    @Override
+    public boolean contains(Object obj) {
+        return obj != null && binarySearch(obj) >= 0;
+    }
+
+    /*
+    Borders are given in the order of this view,
+    so for a descending view `fromElement` bounds the end of the range in the array.
+     */
+    private NavigableSet<T> getSubSet(boolean fromStart, T fromElement, boolean fromInclusive,
+                                      boolean toEnd, T toElement, boolean toInclusive) {
+        if (reversed) {
+            int start = toEnd ? from : bound(toElement, !toInclusive);
+            int end = fromStart ? to : bound(fromElement, fromInclusive);
+            return subView(start, end);
+        }
+        int start = fromStart ? from : bound(fromElement, !fromInclusive);
+        int end = toEnd ? to : bound(toElement, toInclusive);
+        return subView(start, end);
+    }
+
+    private int bound(T value, boolean upper) {
+        int searchResult = binarySearch(value);
+        return upper ? upperBound(searchResult) : lowerBound(searchResult);
+    }
+
+    @Override
+    public NavigableSet<T> subSet(T fromElement, boolean fromInclusive, T toElement, boolean toInclusive) {
+        if ((reversed ? compare(toElement, fromElement) : compare(fromElement, toElement)) > 0) {
+            throw new IllegalArgumentException("Left border can't be greater than the right one");
+        }
+        return getSubSet(false, fromElement, fromInclusive, false, toElement, toInclusive);
+    }
+
+    @Override
+    public NavigableSet<T> headSet(T toElement, boolean inclusive) {
+        return getSubSet(true, null, false, false, toElement, inclusive);
+    }
+
+    @Override
+    public NavigableSet<T> tailSet(T fromElement, boolean inclusive) {
+        return getSubSet(false, fromElement, inclusive, true, null, true);
+    }
+
+    @Override
+    public SortedSet<T> headSet(T toElement) {
+        return headSet(toElement, false);
+    }
+
+    @Override
+    public SortedSet<T> tailSet(T fromElement) {
+        return tailSet(fromElement, true);
+    }
+
+    @Override
+    public Comparator<? super T> comparator() {
+        return viewComparator;
+    }
+
+    @Override
+    public SortedSet<T> subSet(T fromElement, T toElement) {
+        return subSet(fromElement, true, toElement, false);
+    }
+
+    @Override
+    public T first() {
+        checkNotEmpty();
+        return elementAt(firstIndex());
+    }
+
+    @Override
+    public T last() {
+        checkNotEmpty();
+        return elementAt(lastIndex());
+    }
+
+    @Override
+    public int size() {
+        return to - from;
+    }
+
+    /*
+    Order statistics, in the order of this view, without creating views.
+    Positions are 0-based, so get(rank(e)) == e for every contained e.
+     */
+    public T get(int index) {
+        Objects.checkIndex(index, size());
+        return elementAt(reversed ? to - 1 - index : from + index);
+    }
+
+    // position of value, or -1
+    public int indexOf(Object value) {
+        if (comparator == null) {
+            Objects.requireNonNull(value);
+        }
+        int searchResult = binarySearch(value);
+        if (searchResult < 0) {
+            return -1;
+        }
+        return reversed ? to - 1 - searchResult : searchResult - from;
+    }
+
+    // number of elements before value, contained or not
+    public int rank(T value) {
+        if (comparator == null) {
+            Objects.requireNonNull(value);
+        }
+        int searchResult = binarySearch(value);
+        return reversed ? to - upperBound(searchResult) : lowerBound(searchResult) - from;
+    }
+
+    // same as subSet(fromElement, toElement).size()
+    public int countInRange(T fromElement, T toElement) {
+        if ((reversed ? compare(toElement, fromElement) : compare(fromElement, toElement)) > 0) {
+            throw new IllegalArgumentException("Left border can't be greater than the right one");
+        }
+        return rank(toElement) - rank(fromElement);
+    }
+}
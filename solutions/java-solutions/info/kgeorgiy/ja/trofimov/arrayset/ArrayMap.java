@@ -0,0 +1,294 @@
+package info.kgeorgiy.ja.trofimov.arrayset;
+
+import java.util.*;
+
+/*
+Immutable sorted map of two parallel arrays: keys are an `ArraySet`,
+and the value of a key lies at the same array index in `values`.
+Views are views of the key set over the same `values`,
+so all navigation is done by `ArraySet` and gives an index into both arrays.
+ */
+public class ArrayMap<K, V> extends AbstractMap<K, V> implements NavigableMap<K, V> {
+    private final ArraySet<K> keys;
+    private final Object[] values;
+
+    public ArrayMap() {
+        this(Collections.emptyMap());
+    }
+
+    public ArrayMap(Map<? extends K, ? extends V> map) {
+        this(map, null);
+    }
+
+    /*
+    A `SortedMap` with the same comparator is taken as is.
+    Of keys equal by `comparator` the first key and the last value are kept, as `TreeMap.putAll` does.
+     */
+    public ArrayMap(Map<? extends K, ? extends V> map, Comparator<? super K> comparator) {
+        this(sortDistinct(map, comparator), comparator);
+    }
+
+    private ArrayMap(Map.Entry<?, ?>[] entries, Comparator<? super K> comparator) {
+        Object[] keys = new Object[entries.length];
+        this.values = new Object[entries.length];
+        for (int i = 0; i < entries.length; i++) {
+            keys[i] = entries[i].getKey();
+            values[i] = entries[i].getValue();
+        }
+        this.keys = ArraySet.ofSorted(keys, comparator);
+    }
+
+    private ArrayMap(ArraySet<K> keys, Object[] values) {
+        this.keys = keys;
+        this.values = values;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map.Entry<?, ?>[] sortDistinct(Map<?, ?> map, Comparator<?> comparator) {
+        Map.Entry<?, ?>[] entries = map.entrySet().stream()
+                .map(AbstractMap.SimpleImmutableEntry::new)
+                .toArray(Map.Entry<?, ?>[]::new);
+        if (map instanceof SortedMap<?, ?> sortedMap && Objects.equals(sortedMap.comparator(), comparator)) {
+            return entries;
+        }
+
+        Comparator<Object> keyComparator = (Comparator<Object>) comparator;
+        if (entries.length == 1 && comparator == null) {
+            // fails on null or not comparable key, as TreeMap does
+            AbstractArraySet.compare(entries[0].getKey(), entries[0].getKey(), null);
+        }
+        boolean sorted = true;
+        for (int i = 1; i < entries.length && sorted; i++) {
+            sorted = AbstractArraySet.compare(entries[i - 1].getKey(), entries[i].getKey(), keyComparator) < 0;
+        }
+        if (sorted) {
+            return entries;
+        }
+        // stable, so equal keys stay in the iteration order of `map`
+        Arrays.sort(entries, (e1, e2) -> AbstractArraySet.compare(e1.getKey(), e2.getKey(), keyComparator));
+
+        int size = entries.length == 0 ? 0 : 1;
+        for (int i = 1; i < entries.length; i++) {
+            if (AbstractArraySet.compare(entries[size - 1].getKey(), entries[i].getKey(), keyComparator) != 0) {
+                entries[size++] = entries[i];
+            } else {
+                entries[size - 1] = new AbstractMap.SimpleImmutableEntry<>(
+                        entries[size - 1].getKey(), entries[i].getValue());
+            }
+        }
+        return size == entries.length ? entries : Arrays.copyOf(entries, size);
+    }
+
+    @SuppressWarnings("unchecked")
+    private V valueAt(int index) {
+        return (V) values[index];
+    }
+
+    private Entry<K, V> entryOrNull(int index) {
+        return keys.inRange(index) ? new SimpleImmutableEntry<>(keys.elementAt(index), valueAt(index)) : null;
+    }
+
+    private ArrayMap<K, V> subMap(NavigableSet<K> keys) {
+        return new ArrayMap<>((ArraySet<K>) keys, values);
+    }
+
+    @Override
+    public V get(Object key) {
+        if (keys.comparator == null) {
+            Objects.requireNonNull(key);
+        }
+        int index = keys.binarySearch(key);
+        return index >= 0 ? valueAt(index) : null;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return keys.contains(key);
+    }
+
+    @Override
+    public int size() {
+        return keys.size();
+    }
+
+    // max e: e.key < key
+    @Override
+    public Entry<K, V> lowerEntry(K key) {
+        return entryOrNull(keys.lowerIndex(keys.binarySearch(key)));
+    }
+
+    // max e: e.key <= key
+    @Override
+    public Entry<K, V> floorEntry(K key) {
+        return entryOrNull(keys.floorIndex(keys.binarySearch(key)));
+    }
+
+    // min e: e.key >= key
+    @Override
+    public Entry<K, V> ceilingEntry(K key) {
+        return entryOrNull(keys.ceilingIndex(keys.binarySearch(key)));
+    }
+
+    // min e: e.key > key
+    @Override
+    public Entry<K, V> higherEntry(K key) {
+        return entryOrNull(keys.higherIndex(keys.binarySearch(key)));
+    }
+
+    @Override
+    public K lowerKey(K key) {
+        return keys.lower(key);
+    }
+
+    @Override
+    public K floorKey(K key) {
+        return keys.floor(key);
+    }
+
+    @Override
+    public K ceilingKey(K key) {
+        return keys.ceiling(key);
+    }
+
+    @Override
+    public K higherKey(K key) {
+        return keys.higher(key);
+    }
+
+    @Override
+    public Entry<K, V> firstEntry() {
+        return isEmpty() ? null : entryOrNull(keys.firstIndex());
+    }
+
+    @Override
+    public Entry<K, V> lastEntry() {
+        return isEmpty() ? null : entryOrNull(keys.lastIndex());
+    }
+
+    @Override
+    public K firstKey() {
+        return keys.first();
+    }
+
+    @Override
+    public K lastKey() {
+        return keys.last();
+    }
+
+    @Override
+    public Entry<K, V> pollFirstEntry() {
+        throw new UnsupportedOperationException("pollFirstEntry is not supported");
+    }
+
+    @Override
+    public Entry<K, V> pollLastEntry() {
+        throw new UnsupportedOperationException("pollLastEntry is not supported");
+    }
+
+    @Override
+    public Comparator<? super K> comparator() {
+        return keys.comparator();
+    }
+
+    @Override
+    public ArraySet<K> keySet() {
+        return keys;
+    }
+
+    @Override
+    public NavigableSet<K> navigableKeySet() {
+        return keys;
+    }
+
+    @Override
+    public NavigableSet<K> descendingKeySet() {
+        return keys.descendingSet();
+    }
+
+    @Override
+    public NavigableMap<K, V> descendingMap() {
+        return subMap(keys.descendingSet());
+    }
+
+    @Override
+    public NavigableMap<K, V> subMap(K fromKey, boolean fromInclusive, K toKey, boolean toInclusive) {
+        return subMap(keys.subSet(fromKey, fromInclusive, toKey, toInclusive));
+    }
+
+    @Override
+    public NavigableMap<K, V> headMap(K toKey, boolean inclusive) {
+        return subMap(keys.headSet(toKey, inclusive));
+    }
+
+    @Override
+    public NavigableMap<K, V> tailMap(K fromKey, boolean inclusive) {
+        return subMap(keys.tailSet(fromKey, inclusive));
+    }
+
+    @Override
+    public SortedMap<K, V> subMap(K fromKey, K toKey) {
+        return subMap(fromKey, true, toKey, false);
+    }
+
+    @Override
+    public SortedMap<K, V> headMap(K toKey) {
+        return headMap(toKey, false);
+    }
+
+    @Override
+    public SortedMap<K, V> tailMap(K fromKey) {
+        return tailMap(fromKey, true);
+    }
+
+    @Override
+    public Collection<V> values() {
+        return new AbstractCollection<>() {
+            @Override
+            public Iterator<V> iterator() {
+                AbstractArraySet<K>.ArrayIterator indices = keys.new ArrayIterator(keys.reversed);
+                return new Iterator<>() {
+                    @Override
+                    public boolean hasNext() {
+                        return indices.hasNext();
+                    }
+
+                    @Override
+                    public V next() {
+                        return valueAt(indices.nextIndex());
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return keys.size();
+            }
+        };
+    }
+
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<Entry<K, V>> iterator() {
+                AbstractArraySet<K>.ArrayIterator indices = keys.new ArrayIterator(keys.reversed);
+                return new Iterator<>() {
+                    @Override
+                    public boolean hasNext() {
+                        return indices.hasNext();
+                    }
+
+                    @Override
+                    public Entry<K, V> next() {
+                        return entryOrNull(indices.nextIndex());
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return keys.size();
+            }
+        };
+    }
+}
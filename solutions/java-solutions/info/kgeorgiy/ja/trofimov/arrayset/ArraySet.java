@@ -1,10 +1,15 @@
 package info.kgeorgiy.ja.trofimov.arrayset;
 
 import java.util.*;
+import java.util.stream.IntStream;
 
-public class ArraySet<T> extends AbstractSet<T> implements NavigableSet<T> {
-    private final List<T> data;
-    private final Comparator<? super T> comparator;
+public class ArraySet<T> extends AbstractArraySet<T> {
+    // elements in ascending order of `comparator`, shared by the set and all its views
+    private final Object[] data;
+    // search loop for `data`, see kindOf
+    private final int kind;
+    // optional first four chars of every string in `data`, see withStringPrefixes
+    private final long[] prefixes;
 
     public ArraySet() {
         this(Collections.emptyList());
@@ -14,184 +19,591 @@ public class ArraySet<T> extends AbstractSet<T> implements NavigableSet<T> {
         this(collection, null);
     }
 
-    // :NOTE: коллекция может быть уже отсортирована
+    /*
+    A `SortedSet` with the same comparator is taken as is.
+    Other input is checked for order in one pass and only sorted if it is not sorted yet.
+     */
     public ArraySet(Collection<? extends T> collection,
                     Comparator<? super T> comparator) {
-        if (! (collection instanceof SortedSet)) {
-            TreeSet<T> treeSet = new TreeSet<>(comparator);
-            treeSet.addAll(collection);
-            this.data = new ArrayList<>(treeSet);
-        } else {
-            this.data = new ArrayList<>(collection);
-        }
-        this.comparator = comparator;
+        this(sortDistinct(collection, comparator), comparator);
     }
 
-    private ArraySet(List<T> data, Comparator<? super T> comparator) {
-        this.data = data;
-        this.comparator = comparator;
+    private ArraySet(Object[] data, Comparator<? super T> comparator) {
+        this(data, 0, data.length, false, comparator, comparator, kindOf(data, comparator), null);
+    }
+
+    // `data` must be sorted by `comparator` and distinct already; it is not copied
+    static <T> ArraySet<T> ofSorted(Object[] data, Comparator<? super T> comparator) {
+        return new ArraySet<>(data, comparator);
     }
 
-    private void checkNotEmpty() {
-        if (isEmpty()) {
-            throw new NoSuchElementException("List is empty");
+    /*
+    Builds a set from sources each sorted by `comparator`, such as the results of shards,
+    by a k-way merge in O(n log k) instead of a sort. Of equal elements the one from the earliest source is kept.
+    Large collections are merged by pairs in parallel, with each pair merged by `union`.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> ArraySet<T> mergeOf(List<? extends Iterable<? extends T>> sources, Comparator<? super T> comparator) {
+        long total = 0;
+        boolean sized = true;
+        for (Iterable<? extends T> source : sources) {
+            if (source instanceof Collection<?> collection) {
+                total += collection.size();
+            } else {
+                sized = false;
+            }
+        }
+        if (sized && total >= PARALLEL_MERGE_THRESHOLD && sources.size() > 2) {
+            return parallelMergeOf(sources, comparator);
         }
+        return new ArraySet<>(heapMerge(sources, (int) Math.min(total, Integer.MAX_VALUE - 8), (Comparator<Object>) comparator), comparator);
     }
 
-    private T getValueOrNull(int index) {
-        return index >= 0 && index < size() ? data.get(index) : null;
+    @SuppressWarnings("unchecked")
+    private static <T> ArraySet<T> parallelMergeOf(List<? extends Iterable<? extends T>> sources, Comparator<? super T> comparator) {
+        List<ArraySet<T>> sets = sources.parallelStream()
+                .map(source -> new ArraySet<T>(heapMerge(List.of(source), ((Collection<?>) source).size(),
+                        (Comparator<Object>) comparator), comparator))
+                .toList();
+        while (sets.size() > 1) {
+            List<ArraySet<T>> current = sets;
+            sets = IntStream.range(0, (current.size() + 1) / 2).parallel()
+                    .mapToObj(i -> 2 * i + 1 < current.size() ? union(current.get(2 * i), current.get(2 * i + 1)) : current.get(2 * i))
+                    .toList();
+        }
+        return sets.get(0);
     }
 
     /*
-    Returns `insertion point`.
-    The insertion point is defined as the point at which the key would be
-    inserted into the list: the index of the first element greater than the key.
+    Merges the sources through a binary heap of their indices ordered by current elements,
+    the earliest source first among equal ones, so the first of equal elements is taken and the rest are skipped.
      */
-    private int binarySearch(T value) {
-        int index = Collections.binarySearch(data, value, comparator);
-        return index >= 0 ? index : (-1 - index);
-    }
+    private static Object[] heapMerge(List<? extends Iterable<?>> sources, int capacity, Comparator<Object> comparator) {
+        Iterator<?>[] iterators = new Iterator<?>[sources.size()];
+        Object[] heads = new Object[sources.size()];
+        int[] heap = new int[sources.size()];
+        int heapSize = 0;
+        for (int source = 0; source < sources.size(); source++) {
+            iterators[source] = sources.get(source).iterator();
+            if (iterators[source].hasNext()) {
+                heads[source] = iterators[source].next();
+                heap[heapSize++] = source;
+            }
+        }
+        for (int i = heapSize / 2 - 1; i >= 0; i--) {
+            siftDown(heap, heapSize, i, heads, comparator);
+        }
 
-    // max e: e < value
-    @Override
-    public T lower(T value) {
-        return getValueOrNull(getIndex(value, -1, -1));
+        Object[] result = new Object[capacity];
+        int size = 0;
+        while (heapSize > 0) {
+            int source = heap[0];
+            Object value = heads[source];
+            if (size == 0 && comparator == null) {
+                // fails on null or not comparable element, as TreeSet does
+                compare(value, value, null);
+            }
+            if (size == 0 || compare(result[size - 1], value, comparator) != 0) {
+                if (size == result.length) {
+                    result = Arrays.copyOf(result, Math.max(16, 2 * size));
+                }
+                result[size++] = value;
+            }
+            if (iterators[source].hasNext()) {
+                heads[source] = iterators[source].next();
+                if (compare(value, heads[source], comparator) > 0) {
+                    throw new IllegalArgumentException("Source " + source + " is not sorted by the comparator");
+                }
+            } else {
+                heap[0] = heap[--heapSize];
+            }
+            siftDown(heap, heapSize, 0, heads, comparator);
+        }
+        return size == result.length ? result : Arrays.copyOf(result, size);
     }
 
-    // max e: e <= value
-    @Override
-    public T floor(T value) {
-        return getValueOrNull(getIndex(value, 0, -1));
+    private static void siftDown(int[] heap, int size, int i, Object[] heads, Comparator<Object> comparator) {
+        int source = heap[i];
+        while (2 * i + 1 < size) {
+            int child = 2 * i + 1;
+            if (child + 1 < size && precedes(heap[child + 1], heap[child], heads, comparator)) {
+                child++;
+            }
+            if (!precedes(heap[child], source, heads, comparator)) {
+                break;
+            }
+            heap[i] = heap[child];
+            i = child;
+        }
+        heap[i] = source;
     }
 
-    // min e: e >= value
-    @Override
-    public T ceiling(T value) {
-        return getValueOrNull(getIndex(value, 0, 0));
+    private static boolean precedes(int source, int other, Object[] heads, Comparator<Object> comparator) {
+        int cmp = compare(heads[source], heads[other], comparator);
+        return cmp < 0 || cmp == 0 && source < other;
     }
 
-    // min e: e > value
-    @Override
-    public T higher(T value) {
-        return getValueOrNull(getIndex(value, 1, 0));
+    @SuppressWarnings("unchecked")
+    private static Object[] sortDistinct(Collection<?> collection, Comparator<?> comparator) {
+        Object[] elements = collection.toArray();
+        if (collection instanceof SortedSet<?> sortedSet && Objects.equals(sortedSet.comparator(), comparator)) {
+            return elements;
+        }
+        return sortDistinct(elements, (Comparator<Object>) comparator);
     }
 
+    private static final int PARALLEL_SORT_THRESHOLD = 1 << 16;
+
     /*
-    lower index: shiftOne = -1, shiftTwo = -1
-    floor index: shiftOne = 0, shiftTwo = -1
-    ceiling index: shiftOne = 0, shiftTwo = 0
-    higher index: shiftOne = +1, shiftTwo = 0
+    Sorts `elements` in place, unless they are sorted already, and removes duplicates.
+    Sorts are stable, so the first of equal elements is kept, as `TreeSet.addAll` does.
      */
-    private int getIndex(T value, int shiftOne, int shiftTwo) {
-        int index = binarySearch(value);
-        return (index < size() && compare(data.get(index), value) == 0) ?
-                (index + shiftOne) : (index + shiftTwo);
+    private static Object[] sortDistinct(Object[] elements, Comparator<Object> comparator) {
+        if (elements.length == 1 && comparator == null) {
+            // fails on null or not comparable element, as TreeSet does
+            compare(elements[0], elements[0], null);
+        }
+
+        boolean sorted = true;
+        boolean distinct = true;
+        for (int i = 1; i < elements.length && sorted; i++) {
+            int cmp = compare(elements[i - 1], elements[i], comparator);
+            sorted = cmp <= 0;
+            distinct &= cmp != 0;
+        }
+        if (sorted && distinct) {
+            return elements;
+        }
+        if (!sorted) {
+            if (elements.length >= PARALLEL_SORT_THRESHOLD) {
+                Arrays.parallelSort(elements, comparator);
+            } else {
+                Arrays.sort(elements, comparator);
+            }
+        }
+
+        int size = elements.length == 0 ? 0 : 1;
+        for (int i = 1; i < elements.length; i++) {
+            if (compare(elements[size - 1], elements[i], comparator) != 0) {
+                elements[size++] = elements[i];
+            }
+        }
+        return size == elements.length ? elements : Arrays.copyOf(elements, size);
     }
 
-    @Override
-    public T pollFirst() {
-        throw new UnsupportedOperationException("pollFirst is not supported");
+    private ArraySet(Object[] data, int from, int to, boolean reversed,
+                     Comparator<? super T> comparator, Comparator<? super T> viewComparator,
+                     int kind, long[] prefixes) {
+        super(from, to, reversed, comparator, viewComparator);
+        this.data = data;
+        this.kind = kind;
+        this.prefixes = prefixes;
     }
 
-    @Override
-    public T pollLast() {
-        throw new UnsupportedOperationException("pollLast is not supported");
+    /*
+    Natural order of Strings, Integers and Longs is searched by its own loop calling the final compareTo,
+    so every loop stays monomorphic and inlined, whatever other sets the program has.
+     */
+    private static final int GENERIC = 0;
+    private static final int STRINGS = 1;
+    private static final int INTEGERS = 2;
+    private static final int LONGS = 3;
+
+    private static int kindOf(Object[] data, Comparator<?> comparator) {
+        if (comparator != null || data.length == 0) {
+            return GENERIC;
+        }
+        Class<?> type = data[0].getClass();
+        for (Object element : data) {
+            if (element.getClass() != type) {
+                return GENERIC;
+            }
+        }
+        return type == String.class ? STRINGS : type == Integer.class ? INTEGERS : type == Long.class ? LONGS : GENERIC;
     }
 
-    // :NOTE: здесь нужно О(1)
-    @Override
-    public Iterator<T> iterator() {
-        return Collections.unmodifiableList(data).iterator();
+    /*
+    Returns this set with the first four chars of every string cached in a long[],
+    so that searches mostly compare longs and only read strings with the same prefix.
+    Sets of anything but Strings in natural order are returned as is.
+    Views of the result share the cache.
+     */
+    public ArraySet<T> withStringPrefixes() {
+        if (kind != STRINGS || prefixes != null) {
+            return this;
+        }
+        long[] prefixes = new long[data.length];
+        for (int i = 0; i < data.length; i++) {
+            prefixes[i] = prefix((String) data[i]);
+        }
+        return new ArraySet<>(data, from, to, reversed, comparator, comparator(), kind, prefixes);
     }
 
-    @Override
-    public NavigableSet<T> descendingSet() {
-        return new ArraySet<>(new ReversedList<>(data), Collections.reverseOrder(comparator));
+    // compared as unsigned longs, ordered as strings unless equal; missing chars are zeros
+    private static long prefix(String string) {
+        long prefix = 0;
+        for (int i = 0; i < 4; i++) {
+            prefix = prefix << 16 | (i < string.length() ? string.charAt(i) : 0);
+        }
+        return prefix;
     }
 
-    // :NOTE: здесь нужно О(1)
     @Override
-    public Iterator<T> descendingIterator() {
-        return descendingSet().iterator();
+    ArraySet<T> view(int from, int to, boolean reversed, Comparator<? super T> viewComparator) {
+        return new ArraySet<>(data, from, to, reversed, comparator, viewComparator, kind, prefixes);
     }
 
     @SuppressWarnings("unchecked")
     @Override
-    public boolean contains(Object obj) {
-        return obj != null && (Collections.binarySearch(data, (T) obj, comparator) >= 0);
+    T elementAt(int index) {
+        return (T) data[index];
     }
 
     @SuppressWarnings("unchecked")
-    private int compare(T obj1, T obj2) {
-        if (comparator != null) {
-            return comparator.compare(obj1, obj2);
+    @Override
+    int binarySearch(Object value) {
+        return switch (kind) {
+            case STRINGS -> prefixes != null ? searchPrefixes(value) : searchStrings(value);
+            case INTEGERS -> searchIntegers(value);
+            case LONGS -> searchLongs(value);
+            default -> Arrays.binarySearch(data, from, to, value, (Comparator<Object>) comparator);
+        };
+    }
+
+    private int searchStrings(Object value) {
+        int low = from;
+        int high = to - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = ((String) data[mid]).compareTo((String) value);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
         }
-        if (obj1 instanceof Comparable) {
-            return ((Comparable<? super T>) obj1).compareTo(obj2);
-        } else {
-            throw new IllegalArgumentException("Comparator is not defined and `T` can't be compared");
+        return -1 - low;
+    }
+
+    private int searchPrefixes(Object value) {
+        if (from == to) {
+            return -1 - from;
+        }
+        long key = prefix((String) value);
+        int low = from;
+        int high = to - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = Long.compareUnsigned(prefixes[mid], key);
+            if (cmp == 0) {
+                cmp = ((String) data[mid]).compareTo((String) value);
+            }
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
         }
+        return -1 - low;
     }
 
-    private NavigableSet<T> getSubSet(boolean fromStart, T fromElement, boolean fromInclusive,
-                                      boolean toEnd, T toElement, boolean toInclusive) {
-        int start = fromStart ? 0 : getIndex(fromElement, fromInclusive ? 0 : 1, 0);
-        int end = toEnd ? size() - 1 : getIndex(toElement, toInclusive ? 0 : -1, -1);
-        return new ArraySet<>(data.subList(start, end + 1), comparator);
+    private int searchIntegers(Object value) {
+        int low = from;
+        int high = to - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = ((Integer) data[mid]).compareTo((Integer) value);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1 - low;
     }
 
-    @Override
-    public NavigableSet<T> subSet(T fromElement, boolean fromInclusive, T toElement, boolean toInclusive) {
-        if (compare(fromElement, toElement) > 0) {
-            throw new IllegalArgumentException("Left border can't be greater than the right one");
+    private int searchLongs(Object value) {
+        int low = from;
+        int high = to - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = ((Long) data[mid]).compareTo((Long) value);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
         }
-        return getSubSet(false, fromElement, fromInclusive, false, toElement, toInclusive);
+        return -1 - low;
     }
 
     @Override
-    public NavigableSet<T> headSet(T toElement, boolean inclusive) {
-        return getSubSet(true, null, false, false, toElement, inclusive);
+    public Object[] toArray() {
+        Object[] result = Arrays.copyOfRange(data, from, to);
+        if (reversed) {
+            Collections.reverse(Arrays.asList(result));
+        }
+        return result;
     }
 
-    @Override
-    public NavigableSet<T> tailSet(T fromElement, boolean inclusive) {
-        return getSubSet(false, fromElement, inclusive, true, null, true);
+    /*
+    Batch lookups: the i-th result is for keys[i].
+    Keys sorted in the order of this set are found by exponential search from the previous one,
+    so k sorted keys take O(k log(n / k)) comparisons instead of O(k log n).
+    Keys out of order are still allowed and are searched for from scratch.
+     */
+    public BitSet containsAll(T[] keys) {
+        int[] searchResults = searchAll(keys);
+        BitSet contained = new BitSet(keys.length);
+        for (int i = 0; i < keys.length; i++) {
+            if (searchResults[i] >= 0) {
+                contained.set(i);
+            }
+        }
+        return contained;
     }
 
-    @Override
-    public SortedSet<T> headSet(T toElement) {
-        return headSet(toElement, false);
+    // max e: e <= keys[i], or null
+    public T[] floorAll(T[] keys) {
+        int[] searchResults = searchAll(keys);
+        T[] floors = Arrays.copyOf(keys, keys.length);
+        for (int i = 0; i < keys.length; i++) {
+            floors[i] = getValueOrNull(floorIndex(searchResults[i]));
+        }
+        return floors;
     }
 
-    @Override
-    public SortedSet<T> tailSet(T fromElement) {
-        return tailSet(fromElement, true);
+    // min e: e >= keys[i], or null
+    public T[] ceilingAll(T[] keys) {
+        int[] searchResults = searchAll(keys);
+        T[] ceilings = Arrays.copyOf(keys, keys.length);
+        for (int i = 0; i < keys.length; i++) {
+            ceilings[i] = getValueOrNull(ceilingIndex(searchResults[i]));
+        }
+        return ceilings;
     }
 
-    @Override
-    public Comparator<? super T> comparator() {
-        return comparator;
+    /*
+    Keys are visited in ascending order of the array, that is backwards for a descending view,
+    and every key not less than the previous one is searched for to the right of the previous result.
+     */
+    @SuppressWarnings("unchecked")
+    private int[] searchAll(T[] keys) {
+        int[] searchResults = new int[keys.length];
+        T previous = null;
+        int position = from;
+        for (int j = 0; j < keys.length; j++) {
+            int i = reversed ? keys.length - 1 - j : j;
+            if (comparator == null) {
+                Objects.requireNonNull(keys[i]);
+            }
+            searchResults[i] = j > 0 && compare(previous, keys[i]) <= 0
+                    ? gallop(data, position, to, keys[i], (Comparator<Object>) comparator)
+                    : binarySearch(keys[i]);
+            previous = keys[i];
+            position = lowerBound(searchResults[i]);
+        }
+        return searchResults;
     }
 
-    @Override
-    public SortedSet<T> subSet(T fromElement, T toElement) {
-        return subSet(fromElement, true, toElement, false);
+    /*
+    Set algebra by merging the arrays of two sets with the same comparator.
+    The result is ordered as `first`; of equal elements the one from `first` is kept.
+     */
+    public static <T> ArraySet<T> union(ArraySet<T> first, ArraySet<T> second) {
+        return combine(first, second, ONLY_FIRST | ONLY_SECOND | BOTH);
     }
 
-    @Override
-    public T first() {
-        checkNotEmpty();
-        return data.get(0);
+    public static <T> ArraySet<T> intersection(ArraySet<T> first, ArraySet<T> second) {
+        return combine(first, second, BOTH);
     }
 
-    @Override
-    public T last() {
-        checkNotEmpty();
-        return data.get(size() - 1);
+    public static <T> ArraySet<T> difference(ArraySet<T> first, ArraySet<T> second) {
+        return combine(first, second, ONLY_FIRST);
     }
 
-    @Override
-    public int size() {
-        return data.size();
+    public static <T> ArraySet<T> symmetricDifference(ArraySet<T> first, ArraySet<T> second) {
+        return combine(first, second, ONLY_FIRST | ONLY_SECOND);
+    }
+
+    // which elements a merge keeps: those only in the first set, only in the second one, in both
+    private static final int ONLY_FIRST = 1;
+    private static final int ONLY_SECOND = 2;
+    private static final int BOTH = 4;
+
+    // the smaller set is searched for in the larger one if it is this many times smaller
+    private static final int GALLOP_RATIO = 8;
+    private static final int PARALLEL_MERGE_THRESHOLD = 1 << 18;
+
+    @SuppressWarnings("unchecked")
+    private static <T> ArraySet<T> combine(ArraySet<T> first, ArraySet<T> second, int mode) {
+        if (!Objects.equals(first.comparator, second.comparator)) {
+            throw new IllegalArgumentException("Sets must have the same comparator");
+        }
+        Comparator<Object> comparator = (Comparator<Object>) first.comparator;
+        Object[] result = first.size() + second.size() >= PARALLEL_MERGE_THRESHOLD
+                ? parallelMerge(first, second, comparator, mode)
+                : merge(first.data, first.from, first.to, second.data, second.from, second.to, comparator, mode);
+        ArraySet<T> set = new ArraySet<>(result, first.comparator);
+        return first.reversed ? set.view(0, result.length, true, first.comparator()) : set;
+    }
+
+    /*
+    Splits the larger set into equal parts and the other one at the same elements,
+    then merges the pairs of parts independently.
+     */
+    private static Object[] parallelMerge(ArraySet<?> first, ArraySet<?> second, Comparator<Object> comparator, int mode) {
+        int parts = Runtime.getRuntime().availableProcessors() * 4;
+        boolean firstLarger = first.size() >= second.size();
+        ArraySet<?> larger = firstLarger ? first : second;
+        ArraySet<?> smaller = firstLarger ? second : first;
+        int[] largerSplit = new int[parts + 1];
+        int[] smallerSplit = new int[parts + 1];
+        for (int k = 0; k <= parts; k++) {
+            largerSplit[k] = larger.from + (int) ((long) larger.size() * k / parts);
+            smallerSplit[k] = k == parts ? smaller.to
+                    : lowerBound(smaller.binarySearch(larger.data[largerSplit[k]]));
+        }
+        smallerSplit[0] = smaller.from;
+
+        int[] firstSplit = firstLarger ? largerSplit : smallerSplit;
+        int[] secondSplit = firstLarger ? smallerSplit : largerSplit;
+        Object[][] merged = IntStream.range(0, parts).parallel()
+                .mapToObj(k -> merge(first.data, firstSplit[k], firstSplit[k + 1],
+                        second.data, secondSplit[k], secondSplit[k + 1], comparator, mode))
+                .toArray(Object[][]::new);
+
+        Object[] result = new Object[Arrays.stream(merged).mapToInt(part -> part.length).sum()];
+        int size = 0;
+        for (Object[] part : merged) {
+            System.arraycopy(part, 0, result, size, part.length);
+            size += part.length;
+        }
+        return result;
+    }
+
+    private static Object[] merge(Object[] first, int firstFrom, int firstTo,
+                                  Object[] second, int secondFrom, int secondTo,
+                                  Comparator<Object> comparator, int mode) {
+        int firstSize = firstTo - firstFrom;
+        int secondSize = secondTo - secondFrom;
+        Object[] result = new Object[mode == BOTH ? Math.min(firstSize, secondSize)
+                : ((mode & (ONLY_FIRST | BOTH)) != 0 ? firstSize : 0) + ((mode & ONLY_SECOND) != 0 ? secondSize : 0)];
+        int size;
+        if ((long) firstSize * GALLOP_RATIO < secondSize) {
+            size = gallopMerge(first, firstFrom, firstTo, second, secondFrom, secondTo,
+                    comparator, mode, true, result);
+        } else if ((long) secondSize * GALLOP_RATIO < firstSize) {
+            int swapped = (mode & BOTH) | ((mode & ONLY_FIRST) != 0 ? ONLY_SECOND : 0) | ((mode & ONLY_SECOND) != 0 ? ONLY_FIRST : 0);
+            size = gallopMerge(second, secondFrom, secondTo, first, firstFrom, firstTo,
+                    comparator, swapped, false, result);
+        } else {
+            size = linearMerge(first, firstFrom, firstTo, second, secondFrom, secondTo, comparator, mode, result);
+        }
+        return size == result.length ? result : Arrays.copyOf(result, size);
+    }
+
+    private static int linearMerge(Object[] first, int i, int firstTo,
+                                   Object[] second, int j, int secondTo,
+                                   Comparator<Object> comparator, int mode, Object[] result) {
+        int size = 0;
+        while (i < firstTo && j < secondTo) {
+            int cmp = compare(first[i], second[j], comparator);
+            if (cmp < 0) {
+                if ((mode & ONLY_FIRST) != 0) {
+                    result[size++] = first[i];
+                }
+                i++;
+            } else if (cmp > 0) {
+                if ((mode & ONLY_SECOND) != 0) {
+                    result[size++] = second[j];
+                }
+                j++;
+            } else {
+                if ((mode & BOTH) != 0) {
+                    result[size++] = first[i];
+                }
+                i++;
+                j++;
+            }
+        }
+        if ((mode & ONLY_FIRST) != 0) {
+            System.arraycopy(first, i, result, size, firstTo - i);
+            size += firstTo - i;
+        }
+        if ((mode & ONLY_SECOND) != 0) {
+            System.arraycopy(second, j, result, size, secondTo - j);
+            size += secondTo - j;
+        }
+        return size;
+    }
+
+    /*
+    Looks every element of the small set up in the large one, starting from the previous position,
+    and copies the runs of the large set between them as a whole.
+    Takes O(s log(l / s)) comparisons instead of O(s + l).
+    `mode` is in terms of (small, large); `smallIsFirst` tells which one's element to keep if equal.
+     */
+    private static int gallopMerge(Object[] small, int smallFrom, int smallTo,
+                                   Object[] large, int largeFrom, int largeTo,
+                                   Comparator<Object> comparator, int mode, boolean smallIsFirst, Object[] result) {
+        boolean keepLarge = (mode & ONLY_SECOND) != 0;
+        int size = 0;
+        int j = largeFrom;
+        for (int i = smallFrom; i < smallTo; i++) {
+            int searchResult = gallop(large, j, largeTo, small[i], comparator);
+            int position = lowerBound(searchResult);
+            if (keepLarge) {
+                System.arraycopy(large, j, result, size, position - j);
+                size += position - j;
+            }
+            if (searchResult >= 0) {
+                if ((mode & BOTH) != 0) {
+                    result[size++] = smallIsFirst ? small[i] : large[position];
+                }
+                j = position + 1;
+            } else {
+                if ((mode & ONLY_FIRST) != 0) {
+                    result[size++] = small[i];
+                }
+                j = position;
+            }
+        }
+        if (keepLarge) {
+            System.arraycopy(large, j, result, size, largeTo - j);
+            size += largeTo - j;
+        }
+        return size;
+    }
+
+    /*
+    Exponential search from `from`: probes from + 0, 2, 6, 14, ..., 2^k - 2 and then searches binary
+    between the last two probes, so a value k positions away takes O(log k) comparisons.
+    Returns the same as `Arrays.binarySearch` on [from, to).
+     */
+    static int gallop(Object[] data, int from, int to, Object value, Comparator<Object> comparator) {
+        int low = from;
+        for (int step = 1; ; step <<= 1) {
+            int probe = low + step - 1;
+            if (probe >= to || probe < low) {
+                return Arrays.binarySearch(data, low, to, value, comparator);
+            }
+            int cmp = compare(data[probe], value, comparator);
+            if (cmp == 0) {
+                return probe;
+            }
+            if (cmp > 0) {
+                return Arrays.binarySearch(data, low, probe, value, comparator);
+            }
+            low = probe + 1;
+        }
     }
 }
@@ -0,0 +1,220 @@
+package info.kgeorgiy.ja.trofimov.arrayset;
+
+import java.io.*;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/*
+Compact binary format of `ArraySet` and its views.
+
+A set is written as a header, magic, version, key codec and direction, then the number of keys
+and the keys of its range in ascending order of the comparator, each coded against the previous one.
+Reading takes the same codec and the comparator of the written set: the keys are only checked
+for order, not sorted, and the set is rebuilt as a view of the same direction.
+
+Streams are not buffered or closed here, so reading a plain stream should go through a buffer.
+Malformed input is reported as `IOException`: sizes and lengths from the stream are not trusted
+for allocation, so a corrupt header fails at the end of the data instead of exhausting the heap.
+ */
+public final class ArraySetCodec {
+    private static final int MAGIC = 0x41534543;
+    private static final int VERSION = 1;
+    // the most keys or bytes allocated ahead of reading them
+    private static final int PREALLOCATED = 1 << 12;
+    private static final int MAX_LENGTH = Integer.MAX_VALUE - 8;
+
+    private ArraySetCodec() {
+    }
+
+    // writes and reads a key given the previous one, which is null for the first key
+    public interface KeyCodec<T> {
+        // written to the header as a byte, so a set is not read with another codec
+        int id();
+
+        void write(DataOutput out, T previous, T value) throws IOException;
+
+        T read(DataInput in, T previous) throws IOException;
+    }
+
+    // length of the prefix shared with the previous key, then the rest in UTF-8
+    public static final KeyCodec<String> STRINGS = new KeyCodec<>() {
+        @Override
+        public int id() {
+            return 1;
+        }
+
+        @Override
+        public void write(DataOutput out, String previous, String value) throws IOException {
+            int shared = 0;
+            if (previous != null) {
+                int limit = Math.min(previous.length(), value.length());
+                while (shared < limit && previous.charAt(shared) == value.charAt(shared)) {
+                    shared++;
+                }
+                // keeps surrogate pairs whole
+                if (shared > 0 && Character.isHighSurrogate(value.charAt(shared - 1))) {
+                    shared--;
+                }
+            }
+            byte[] suffix = Utf8.encode(value.substring(shared));
+            writeVarint(out, shared);
+            writeVarint(out, suffix.length);
+            out.write(suffix);
+        }
+
+        @Override
+        public String read(DataInput in, String previous) throws IOException {
+            long shared = readVarint(in);
+            if (shared < 0 || shared > (previous == null ? 0 : previous.length())) {
+                throw new IOException("Shared prefix of " + shared + " chars is longer than the previous key");
+            }
+            byte[] suffix = readBytes(in, readVarint(in));
+            String rest = Utf8.decode(suffix, 0, suffix.length);
+            return shared == 0 ? rest : previous.substring(0, (int) shared).concat(rest);
+        }
+    };
+
+    // difference from the previous key, zigzag-coded so that any order is short
+    public static final KeyCodec<Integer> INTEGERS = new KeyCodec<>() {
+        @Override
+        public int id() {
+            return 2;
+        }
+
+        @Override
+        public void write(DataOutput out, Integer previous, Integer value) throws IOException {
+            writeZigzag(out, value - (previous == null ? 0 : previous));
+        }
+
+        @Override
+        public Integer read(DataInput in, Integer previous) throws IOException {
+            return (int) readZigzag(in) + (previous == null ? 0 : previous);
+        }
+    };
+
+    public static final KeyCodec<Long> LONGS = new KeyCodec<>() {
+        @Override
+        public int id() {
+            return 3;
+        }
+
+        @Override
+        public void write(DataOutput out, Long previous, Long value) throws IOException {
+            writeZigzag(out, value - (previous == null ? 0 : previous));
+        }
+
+        @Override
+        public Long read(DataInput in, Long previous) throws IOException {
+            return readZigzag(in) + (previous == null ? 0 : previous);
+        }
+    };
+
+    // only the range of a view is written
+    public static <T> void write(OutputStream stream, ArraySet<T> set, KeyCodec<? super T> codec) throws IOException {
+        checkId(codec);
+        DataOutputStream out = new DataOutputStream(stream);
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+        out.writeByte(codec.id());
+        out.writeBoolean(set.reversed);
+        writeVarint(out, set.size());
+        T previous = null;
+        for (int i = set.from; i < set.to; i++) {
+            T value = set.elementAt(i);
+            codec.write(out, previous, value);
+            previous = value;
+        }
+        out.flush();
+    }
+
+    public static <T> ArraySet<T> read(InputStream stream, KeyCodec<T> codec, Comparator<? super T> comparator) throws IOException {
+        checkId(codec);
+        DataInputStream in = new DataInputStream(stream);
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not an array set");
+        }
+        int version = in.readUnsignedByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported version " + version);
+        }
+        int id = in.readUnsignedByte();
+        if (id != codec.id()) {
+            throw new IOException("Written with key codec " + id + ", not " + codec.id());
+        }
+        boolean reversed = in.readBoolean();
+        long size = readVarint(in);
+        if (size < 0 || size > MAX_LENGTH) {
+            throw new IOException("Too many keys: " + size);
+        }
+        // grows with the keys read
+        Object[] data = new Object[(int) Math.min(size, PREALLOCATED)];
+        T previous = null;
+        for (int i = 0; i < size; i++) {
+            T value = codec.read(in, previous);
+            if (i > 0 && compareKeys(previous, value, comparator) >= 0) {
+                throw new IOException("Keys are not sorted by the comparator at " + i);
+            }
+            if (i == data.length) {
+                data = Arrays.copyOf(data, (int) Math.min(size, 2L * i));
+            }
+            data[i] = previous = value;
+        }
+        ArraySet<T> set = ArraySet.ofSorted(data, comparator);
+        return reversed ? (ArraySet<T>) set.descendingSet() : set;
+    }
+
+    private static void checkId(KeyCodec<?> codec) {
+        if (codec.id() < 0 || codec.id() > 0xFF) {
+            throw new IllegalArgumentException("Key codec id " + codec.id() + " is not a byte");
+        }
+    }
+
+    // `length` bytes, allocated as they are read
+    private static byte[] readBytes(DataInput in, long length) throws IOException {
+        if (length < 0 || length > MAX_LENGTH) {
+            throw new IOException("Too long key: " + length + " bytes");
+        }
+        byte[] bytes = new byte[(int) Math.min(length, PREALLOCATED)];
+        for (int read = 0; read < length; read = bytes.length) {
+            if (read == bytes.length) {
+                bytes = Arrays.copyOf(bytes, (int) Math.min(length, 2L * read));
+            }
+            in.readFully(bytes, read, bytes.length - read);
+        }
+        return bytes;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> int compareKeys(T previous, T value, Comparator<? super T> comparator) {
+        return AbstractArraySet.compare(previous, value, (Comparator<Object>) comparator);
+    }
+
+    private static void writeZigzag(DataOutput out, long value) throws IOException {
+        writeVarint(out, value << 1 ^ value >> 63);
+    }
+
+    private static long readZigzag(DataInput in) throws IOException {
+        long value = readVarint(in);
+        return value >>> 1 ^ -(value & 1);
+    }
+
+    private static void writeVarint(DataOutput out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) (value | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long readVarint(DataInput in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+}
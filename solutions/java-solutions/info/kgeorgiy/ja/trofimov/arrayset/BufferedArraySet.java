@@ -0,0 +1,685 @@
+package info.kgeorgiy.ja.trofimov.arrayset;
+
+import java.util.*;
+
+/*
+Mutable sorted set of a sorted main array and a small sorted insert buffer, not thread-safe.
+
+The main array is data[head, tail): polling from either end only moves a bound,
+and an element greater than all others is appended in place while the buffer is empty.
+Other inserts go into the buffer, which is merged into the main array when it is full.
+With a buffer of about sqrt(n) elements an insert costs O(sqrt(n)) amortized,
+and a lookup is a binary search in both arrays.
+
+Iteration merges the buffer first. Views are ranges backed by the set, as those of `TreeSet`,
+and `snapshot` gives an immutable copy.
+ */
+public class BufferedArraySet<T> extends AbstractSet<T> implements NavigableSet<T> {
+    private static final int MIN_BUFFER = 32;
+
+    private final Comparator<? super T> comparator;
+    private Object[] data;
+    private int head;
+    private int tail;
+    private Object[] buffer = new Object[MIN_BUFFER];
+    private int buffered;
+    private int modCount;
+
+    public BufferedArraySet() {
+        this(Collections.emptyList());
+    }
+
+    public BufferedArraySet(Comparator<? super T> comparator) {
+        this(Collections.emptyList(), comparator);
+    }
+
+    public BufferedArraySet(Collection<? extends T> collection) {
+        this(collection, null);
+    }
+
+    public BufferedArraySet(Collection<? extends T> collection, Comparator<? super T> comparator) {
+        this.comparator = comparator;
+        this.data = new ArraySet<>(collection, comparator).toArray();
+        this.tail = data.length;
+    }
+
+    @SuppressWarnings("unchecked")
+    private int compare(Object obj1, Object obj2) {
+        return AbstractArraySet.compare(obj1, obj2, (Comparator<Object>) comparator);
+    }
+
+    @SuppressWarnings("unchecked")
+    private int searchData(Object value) {
+        return Arrays.binarySearch(data, head, tail, value, (Comparator<Object>) comparator);
+    }
+
+    @SuppressWarnings("unchecked")
+    private int searchBuffer(Object value) {
+        return Arrays.binarySearch(buffer, 0, buffered, value, (Comparator<Object>) comparator);
+    }
+
+    private void checkValue(Object value) {
+        if (comparator == null) {
+            Objects.requireNonNull(value);
+        }
+    }
+
+    @Override
+    public boolean add(T value) {
+        checkValue(value);
+        if (buffered == 0 && (head == tail || compare(data[tail - 1], value) < 0)) {
+            // the common append of a new maximum
+            if (tail == data.length) {
+                data = Arrays.copyOfRange(data, head, head + Math.max(MIN_BUFFER, 2 * (tail - head)));
+                tail -= head;
+                head = 0;
+            }
+            data[tail++] = value;
+            modCount++;
+            return true;
+        }
+        if (searchData(value) >= 0) {
+            return false;
+        }
+        int searchResult = searchBuffer(value);
+        if (searchResult >= 0) {
+            return false;
+        }
+        int position = -1 - searchResult;
+        System.arraycopy(buffer, position, buffer, position + 1, buffered - position);
+        buffer[position] = value;
+        buffered++;
+        modCount++;
+        if (buffered == buffer.length) {
+            flush();
+        }
+        return true;
+    }
+
+    /*
+    Merges the buffer into the main array and sizes the next buffer to about sqrt(n):
+    then an insert costs O(sqrt(n)) for the shift in the buffer plus O(n / sqrt(n)) for its share of merges.
+     */
+    private void flush() {
+        if (buffered == 0) {
+            return;
+        }
+        Object[] merged = new Object[tail - head + buffered];
+        int i = head;
+        int j = 0;
+        int size = 0;
+        while (i < tail && j < buffered) {
+            merged[size++] = compare(data[i], buffer[j]) < 0 ? data[i++] : buffer[j++];
+        }
+        System.arraycopy(data, i, merged, size, tail - i);
+        size += tail - i;
+        System.arraycopy(buffer, j, merged, size, buffered - j);
+        data = merged;
+        head = 0;
+        tail = merged.length;
+        buffer = new Object[Math.max(MIN_BUFFER, (int) Math.sqrt(tail))];
+        buffered = 0;
+    }
+
+    @Override
+    public boolean remove(Object value) {
+        checkValue(value);
+        int searchResult = searchBuffer(value);
+        if (searchResult >= 0) {
+            removeFromBuffer(searchResult);
+            return true;
+        }
+        searchResult = searchData(value);
+        if (searchResult < 0) {
+            return false;
+        }
+        // shifts the shorter side, so removing near either end is cheap
+        if (searchResult - head < tail - 1 - searchResult) {
+            System.arraycopy(data, head, data, head + 1, searchResult - head);
+            data[head++] = null;
+        } else {
+            System.arraycopy(data, searchResult + 1, data, searchResult, tail - 1 - searchResult);
+            data[--tail] = null;
+        }
+        modCount++;
+        return true;
+    }
+
+    private void removeFromBuffer(int index) {
+        System.arraycopy(buffer, index + 1, buffer, index, buffered - 1 - index);
+        buffer[--buffered] = null;
+        modCount++;
+    }
+
+    @Override
+    public boolean removeAll(Collection<?> values) {
+        boolean changed = false;
+        for (Object value : values) {
+            changed |= remove(value);
+        }
+        return changed;
+    }
+
+    @Override
+    public boolean retainAll(Collection<?> values) {
+        flush();
+        int size = head;
+        for (int i = head; i < tail; i++) {
+            if (values.contains(data[i])) {
+                data[size++] = data[i];
+            }
+        }
+        if (size == tail) {
+            return false;
+        }
+        Arrays.fill(data, size, tail, null);
+        tail = size;
+        modCount++;
+        return true;
+    }
+
+    @Override
+    public void clear() {
+        data = new Object[0];
+        head = tail = 0;
+        buffer = new Object[MIN_BUFFER];
+        buffered = 0;
+        modCount++;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public T pollFirst() {
+        if (isEmpty()) {
+            return null;
+        }
+        if (buffered > 0 && (head == tail || compare(buffer[0], data[head]) < 0)) {
+            T first = (T) buffer[0];
+            removeFromBuffer(0);
+            return first;
+        }
+        T first = (T) data[head];
+        data[head++] = null;
+        modCount++;
+        return first;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public T pollLast() {
+        if (isEmpty()) {
+            return null;
+        }
+        if (buffered > 0 && (head == tail || compare(buffer[buffered - 1], data[tail - 1]) > 0)) {
+            T last = (T) buffer[buffered - 1];
+            removeFromBuffer(buffered - 1);
+            return last;
+        }
+        T last = (T) data[--tail];
+        data[tail] = null;
+        modCount++;
+        return last;
+    }
+
+    @Override
+    public boolean contains(Object value) {
+        checkValue(value);
+        return searchBuffer(value) >= 0 || searchData(value) >= 0;
+    }
+
+    @Override
+    public int size() {
+        return tail - head + buffered;
+    }
+
+    @Override
+    public T first() {
+        checkNotEmpty();
+        return ceilingOf(null, true, true);
+    }
+
+    @Override
+    public T last() {
+        checkNotEmpty();
+        return floorOf(null, true, true);
+    }
+
+    private void checkNotEmpty() {
+        if (isEmpty()) {
+            throw new NoSuchElementException("Set is empty");
+        }
+    }
+
+    // max e: e < value
+    @Override
+    public T lower(T value) {
+        return floorOf(value, false, false);
+    }
+
+    // max e: e <= value
+    @Override
+    public T floor(T value) {
+        return floorOf(value, true, false);
+    }
+
+    // min e: e >= value
+    @Override
+    public T ceiling(T value) {
+        return ceilingOf(value, true, false);
+    }
+
+    // min e: e > value
+    @Override
+    public T higher(T value) {
+        return ceilingOf(value, false, false);
+    }
+
+    // the greater of the floors in both arrays; the last element if `any`
+    @SuppressWarnings("unchecked")
+    private T floorOf(T value, boolean inclusive, boolean any) {
+        if (!any) {
+            checkValue(value);
+        }
+        int dataIndex = any ? tail - 1 : floorIndex(searchData(value), inclusive);
+        int bufferIndex = any ? buffered - 1 : floorIndex(searchBuffer(value), inclusive);
+        if (dataIndex < head) {
+            return bufferIndex >= 0 ? (T) buffer[bufferIndex] : null;
+        }
+        return (T) (bufferIndex >= 0 && compare(buffer[bufferIndex], data[dataIndex]) > 0
+                ? buffer[bufferIndex] : data[dataIndex]);
+    }
+
+    // the less of the ceilings in both arrays; the first element if `any`
+    @SuppressWarnings("unchecked")
+    private T ceilingOf(T value, boolean inclusive, boolean any) {
+        if (!any) {
+            checkValue(value);
+        }
+        int dataIndex = any ? head : ceilingIndex(searchData(value), inclusive);
+        int bufferIndex = any ? 0 : ceilingIndex(searchBuffer(value), inclusive);
+        if (dataIndex >= tail) {
+            return bufferIndex < buffered ? (T) buffer[bufferIndex] : null;
+        }
+        return (T) (bufferIndex < buffered && compare(buffer[bufferIndex], data[dataIndex]) < 0
+                ? buffer[bufferIndex] : data[dataIndex]);
+    }
+
+    private static int floorIndex(int searchResult, boolean inclusive) {
+        return inclusive ? AbstractArraySet.upperBound(searchResult) - 1 : AbstractArraySet.lowerBound(searchResult) - 1;
+    }
+
+    private static int ceilingIndex(int searchResult, boolean inclusive) {
+        return inclusive ? AbstractArraySet.lowerBound(searchResult) : AbstractArraySet.upperBound(searchResult);
+    }
+
+    // current contents as an immutable set
+    public ArraySet<T> snapshot() {
+        flush();
+        return ArraySet.ofSorted(Arrays.copyOfRange(data, head, tail), comparator);
+    }
+
+    // the number of elements less than value, or not greater if inclusive
+    private int countBelow(Object value, boolean inclusive) {
+        return ceilingIndex(searchData(value), !inclusive) - head + ceilingIndex(searchBuffer(value), !inclusive);
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        flush();
+        return new BufferedIterator(false, head, tail);
+    }
+
+    @Override
+    public Iterator<T> descendingIterator() {
+        flush();
+        return new BufferedIterator(true, head, tail);
+    }
+
+    /*
+    Over data[from, to) after a flush; fails on any modification but its own removes.
+    A remove shifts the already visited side, so the unvisited elements and the far bound keep their indices.
+     */
+    private class BufferedIterator implements Iterator<T> {
+        private final boolean backwards;
+        private final int from;
+        private final int to;
+        private int next;
+        private int previous;
+        private int expectedModCount = modCount;
+
+        BufferedIterator(boolean backwards, int from, int to) {
+            this.backwards = backwards;
+            this.from = from;
+            this.to = to;
+            this.next = backwards ? to - 1 : from;
+            this.previous = -1;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return backwards ? next >= from : next < to;
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public T next() {
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            previous = next;
+            next += backwards ? -1 : 1;
+            return (T) data[previous];
+        }
+
+        @Override
+        public void remove() {
+            if (previous < 0) {
+                throw new IllegalStateException();
+            }
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            if (backwards) {
+                System.arraycopy(data, previous + 1, data, previous, tail - 1 - previous);
+                data[--tail] = null;
+            } else {
+                System.arraycopy(data, head, data, head + 1, previous - head);
+                data[head++] = null;
+            }
+            previous = -1;
+            expectedModCount = ++modCount;
+        }
+    }
+
+    @Override
+    public Comparator<? super T> comparator() {
+        return comparator;
+    }
+
+    private RangeView all(boolean descending) {
+        return new RangeView(true, null, false, true, null, false, descending);
+    }
+
+    @Override
+    public NavigableSet<T> descendingSet() {
+        return all(true);
+    }
+
+    @Override
+    public NavigableSet<T> subSet(T fromElement, boolean fromInclusive, T toElement, boolean toInclusive) {
+        return all(false).subSet(fromElement, fromInclusive, toElement, toInclusive);
+    }
+
+    @Override
+    public NavigableSet<T> headSet(T toElement, boolean inclusive) {
+        return all(false).headSet(toElement, inclusive);
+    }
+
+    @Override
+    public NavigableSet<T> tailSet(T fromElement, boolean inclusive) {
+        return all(false).tailSet(fromElement, inclusive);
+    }
+
+    @Override
+    public SortedSet<T> subSet(T fromElement, T toElement) {
+        return subSet(fromElement, true, toElement, false);
+    }
+
+    @Override
+    public SortedSet<T> headSet(T toElement) {
+        return headSet(toElement, false);
+    }
+
+    @Override
+    public SortedSet<T> tailSet(T fromElement) {
+        return tailSet(fromElement, true);
+    }
+
+    /*
+    Elements of the set between two optional bounds, in either direction; all changes go through to the set.
+    Bounds are in the order of the set: lookups ask the set and drop results out of range,
+    size is counted by binary searches and iteration walks the main array between the bounds.
+     */
+    private final class RangeView extends AbstractSet<T> implements NavigableSet<T> {
+        private final boolean fromStart;
+        private final T low;
+        private final boolean lowInclusive;
+        private final boolean toEnd;
+        private final T high;
+        private final boolean highInclusive;
+        private final boolean descending;
+
+        RangeView(boolean fromStart, T low, boolean lowInclusive,
+                  boolean toEnd, T high, boolean highInclusive, boolean descending) {
+            this.fromStart = fromStart;
+            this.low = low;
+            this.lowInclusive = lowInclusive;
+            this.toEnd = toEnd;
+            this.high = high;
+            this.highInclusive = highInclusive;
+            this.descending = descending;
+        }
+
+        private boolean tooLow(Object value) {
+            if (fromStart) {
+                return false;
+            }
+            int comparison = compare(value, low);
+            return comparison < 0 || comparison == 0 && !lowInclusive;
+        }
+
+        private boolean tooHigh(Object value) {
+            if (toEnd) {
+                return false;
+            }
+            int comparison = compare(value, high);
+            return comparison > 0 || comparison == 0 && !highInclusive;
+        }
+
+        private boolean inRange(Object value) {
+            return !tooLow(value) && !tooHigh(value);
+        }
+
+        // an exclusive bound of this view may be an exclusive bound of its view
+        private boolean inRange(Object value, boolean inclusive) {
+            return inclusive
+                    ? inRange(value)
+                    : (fromStart || compare(value, low) >= 0) && (toEnd || compare(value, high) <= 0);
+        }
+
+        private T lowest() {
+            T value = ceilingOf(low, lowInclusive, fromStart);
+            return value == null || tooHigh(value) ? null : value;
+        }
+
+        private T highest() {
+            T value = floorOf(high, highInclusive, toEnd);
+            return value == null || tooLow(value) ? null : value;
+        }
+
+        // in the order of the set
+        private T ceilingInRange(T value, boolean inclusive) {
+            if (tooLow(value)) {
+                return lowest();
+            }
+            T ceiling = ceilingOf(value, inclusive, false);
+            return ceiling == null || tooHigh(ceiling) ? null : ceiling;
+        }
+
+        private T floorInRange(T value, boolean inclusive) {
+            if (tooHigh(value)) {
+                return highest();
+            }
+            T floor = floorOf(value, inclusive, false);
+            return floor == null || tooLow(floor) ? null : floor;
+        }
+
+        @Override
+        public T lower(T value) {
+            return descending ? ceilingInRange(value, false) : floorInRange(value, false);
+        }
+
+        @Override
+        public T floor(T value) {
+            return descending ? ceilingInRange(value, true) : floorInRange(value, true);
+        }
+
+        @Override
+        public T ceiling(T value) {
+            return descending ? floorInRange(value, true) : ceilingInRange(value, true);
+        }
+
+        @Override
+        public T higher(T value) {
+            return descending ? floorInRange(value, false) : ceilingInRange(value, false);
+        }
+
+        @Override
+        public T first() {
+            checkNotEmpty();
+            return descending ? highest() : lowest();
+        }
+
+        @Override
+        public T last() {
+            checkNotEmpty();
+            return descending ? lowest() : highest();
+        }
+
+        private void checkNotEmpty() {
+            if (isEmpty()) {
+                throw new NoSuchElementException("Set is empty");
+            }
+        }
+
+        @Override
+        public T pollFirst() {
+            return removed(descending ? highest() : lowest());
+        }
+
+        @Override
+        public T pollLast() {
+            return removed(descending ? lowest() : highest());
+        }
+
+        private T removed(T value) {
+            if (value != null) {
+                BufferedArraySet.this.remove(value);
+            }
+            return value;
+        }
+
+        @Override
+        public boolean contains(Object value) {
+            return inRange(value) && BufferedArraySet.this.contains(value);
+        }
+
+        @Override
+        public boolean add(T value) {
+            if (!inRange(value)) {
+                throw new IllegalArgumentException("Value is out of the view range");
+            }
+            return BufferedArraySet.this.add(value);
+        }
+
+        @Override
+        public boolean remove(Object value) {
+            return inRange(value) && BufferedArraySet.this.remove(value);
+        }
+
+        @Override
+        public int size() {
+            int above = toEnd ? BufferedArraySet.this.size() : countBelow(high, highInclusive);
+            int below = fromStart ? 0 : countBelow(low, !lowInclusive);
+            return Math.max(0, above - below);
+        }
+
+        @Override
+        public Iterator<T> iterator() {
+            return rangeIterator(descending);
+        }
+
+        @Override
+        public Iterator<T> descendingIterator() {
+            return rangeIterator(!descending);
+        }
+
+        private Iterator<T> rangeIterator(boolean backwards) {
+            flush();
+            int from = fromStart ? head : ceilingIndex(searchData(low), lowInclusive);
+            int to = toEnd ? tail : floorIndex(searchData(high), highInclusive) + 1;
+            return new BufferedIterator(backwards, from, Math.max(from, to));
+        }
+
+        @Override
+        public Comparator<? super T> comparator() {
+            return descending ? Collections.reverseOrder(comparator) : comparator;
+        }
+
+        @Override
+        public NavigableSet<T> descendingSet() {
+            return new RangeView(fromStart, low, lowInclusive, toEnd, high, highInclusive, !descending);
+        }
+
+        @Override
+        public NavigableSet<T> subSet(T fromElement, boolean fromInclusive, T toElement, boolean toInclusive) {
+            if (descending ? compare(fromElement, toElement) < 0 : compare(fromElement, toElement) > 0) {
+                throw new IllegalArgumentException("Left border can't be greater than the right one");
+            }
+            return descending
+                    ? range(false, toElement, toInclusive, false, fromElement, fromInclusive)
+                    : range(false, fromElement, fromInclusive, false, toElement, toInclusive);
+        }
+
+        @Override
+        public NavigableSet<T> headSet(T toElement, boolean inclusive) {
+            return descending
+                    ? range(false, toElement, inclusive, true, null, false)
+                    : range(true, null, false, false, toElement, inclusive);
+        }
+
+        @Override
+        public NavigableSet<T> tailSet(T fromElement, boolean inclusive) {
+            return descending
+                    ? range(true, null, false, false, fromElement, inclusive)
+                    : range(false, fromElement, inclusive, true, null, false);
+        }
+
+        // a view of this one with the given bounds in the order of the set, a missing bound is kept
+        private RangeView range(boolean fromStart, T low, boolean lowInclusive,
+                                boolean toEnd, T high, boolean highInclusive) {
+            if (!fromStart && !inRange(low, lowInclusive) || !toEnd && !inRange(high, highInclusive)) {
+                throw new IllegalArgumentException("Bound is out of the view range");
+            }
+            if (fromStart) {
+                fromStart = this.fromStart;
+                low = this.low;
+                lowInclusive = this.lowInclusive;
+            }
+            if (toEnd) {
+                toEnd = this.toEnd;
+                high = this.high;
+                highInclusive = this.highInclusive;
+            }
+            return new RangeView(fromStart, low, lowInclusive, toEnd, high, highInclusive, descending);
+        }
+
+        @Override
+        public SortedSet<T> subSet(T fromElement, T toElement) {
+            return subSet(fromElement, true, toElement, false);
+        }
+
+        @Override
+        public SortedSet<T> headSet(T toElement) {
+            return headSet(toElement, false);
+        }
+
+        @Override
+        public SortedSet<T> tailSet(T fromElement) {
+            return tailSet(fromElement, true);
+        }
+    }
+}
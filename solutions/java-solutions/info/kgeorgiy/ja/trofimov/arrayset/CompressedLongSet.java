@@ -0,0 +1,339 @@
+package info.kgeorgiy.ja.trofimov.arrayset;
+
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+import java.util.stream.LongStream;
+import java.util.stream.StreamSupport;
+
+/*
+Immutable set of longs in natural order, compressed, with the views of `ArraySet`.
+
+Elements are split into blocks of 128. The first element of every block is kept as is in `heads`,
+which is the skip index; the others are stored as varint-coded differences from the previous one.
+A lookup binary searches `heads` and decodes one block; iteration decodes every block once.
+Dense id ranges take a little more than a byte per element.
+ */
+public class CompressedLongSet extends AbstractArraySet<Long> {
+    private static final int BLOCK = 128;
+
+    private record Blocks(long[] heads, int[] offsets, byte[] deltas, int size) {
+    }
+
+    // shared by the set and all its views
+    private final Blocks blocks;
+
+    public CompressedLongSet() {
+        this(new long[0]);
+    }
+
+    public CompressedLongSet(long... values) {
+        this(compress(LongArraySet.sortDistinct(values.clone())), null);
+    }
+
+    public CompressedLongSet(Collection<? extends Long> collection) {
+        this(compress(LongArraySet.sortDistinct(collection.stream().mapToLong(Long::longValue).toArray())), null);
+    }
+
+    private CompressedLongSet(Blocks blocks, Comparator<? super Long> viewComparator) {
+        this(blocks, 0, blocks.size(), false, viewComparator);
+    }
+
+    private CompressedLongSet(Blocks blocks, int from, int to, boolean reversed, Comparator<? super Long> viewComparator) {
+        super(from, to, reversed, null, viewComparator);
+        this.blocks = blocks;
+    }
+
+    /*
+    Differences of sorted distinct longs are positive as unsigned numbers, even across zero,
+    and are written 7 bits per byte, low bits first, with the high bit set on all bytes but the last.
+     */
+    private static Blocks compress(long[] sorted) {
+        int count = (sorted.length + BLOCK - 1) / BLOCK;
+        long[] heads = new long[count];
+        int[] offsets = new int[count + 1];
+        byte[] deltas = new byte[Math.max(16, sorted.length + sorted.length / 4)];
+        int size = 0;
+        for (int block = 0; block < count; block++) {
+            int start = block * BLOCK;
+            heads[block] = sorted[start];
+            offsets[block] = size;
+            for (int i = start + 1; i < Math.min(start + BLOCK, sorted.length); i++) {
+                if (size + 10 > deltas.length) {
+                    deltas = Arrays.copyOf(deltas, deltas.length * 2);
+                }
+                long delta = sorted[i] - sorted[i - 1];
+                while ((delta & ~0x7FL) != 0) {
+                    deltas[size++] = (byte) (delta | 0x80);
+                    delta >>>= 7;
+                }
+                deltas[size++] = (byte) delta;
+            }
+        }
+        offsets[count] = size;
+        return new Blocks(heads, offsets, Arrays.copyOf(deltas, size), sorted.length);
+    }
+
+    // reads the elements of a block in order, undoing `compress`
+    private static final class Cursor {
+        private final byte[] deltas;
+        private int position;
+        private long current;
+
+        Cursor(Blocks blocks, int block) {
+            this.deltas = blocks.deltas();
+            this.position = blocks.offsets()[block];
+            this.current = blocks.heads()[block];
+        }
+
+        long current() {
+            return current;
+        }
+
+        long next() {
+            long delta = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = deltas[position++];
+                delta |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            return current += delta;
+        }
+    }
+
+    // decodes `block` into `values`, returns the number of its elements
+    private int decode(int block, long[] values) {
+        Cursor cursor = new Cursor(blocks, block);
+        int count = Math.min(BLOCK, blocks.size() - block * BLOCK);
+        values[0] = cursor.current();
+        for (int i = 1; i < count; i++) {
+            values[i] = cursor.next();
+        }
+        return count;
+    }
+
+    /*
+    Like `Arrays.binarySearch` over the whole set; decodes the block only up to the answer.
+     */
+    private int searchAll(long value) {
+        int block = Arrays.binarySearch(blocks.heads(), value);
+        if (block >= 0) {
+            return block * BLOCK;
+        }
+        // the last block starting below value
+        block = -2 - block;
+        if (block < 0) {
+            return -1;
+        }
+        Cursor cursor = new Cursor(blocks, block);
+        int start = block * BLOCK;
+        int count = Math.min(BLOCK, blocks.size() - start);
+        for (int i = 1; i < count; i++) {
+            long current = cursor.next();
+            if (current >= value) {
+                return current == value ? start + i : -1 - (start + i);
+            }
+        }
+        return -1 - (start + count);
+    }
+
+    @Override
+    CompressedLongSet view(int from, int to, boolean reversed, Comparator<? super Long> viewComparator) {
+        return new CompressedLongSet(blocks, from, to, reversed, viewComparator);
+    }
+
+    @Override
+    Long elementAt(int index) {
+        return longAt(index);
+    }
+
+    // decodes the block of `index` only up to it, allocating nothing once the cursor is scalar-replaced
+    private long longAt(int index) {
+        Cursor cursor = new Cursor(blocks, index / BLOCK);
+        for (int i = index % BLOCK; i > 0; i--) {
+            cursor.next();
+        }
+        return cursor.current();
+    }
+
+    @Override
+    int binarySearch(Object value) {
+        return binarySearch((long) (Long) value);
+    }
+
+    // the search covers the whole set, a view only its part
+    int binarySearch(long value) {
+        int searchResult = searchAll(value);
+        int position = lowerBound(searchResult);
+        return position < from ? -1 - from : position >= to ? -1 - to : searchResult;
+    }
+
+    public boolean contains(long value) {
+        return binarySearch(value) >= 0;
+    }
+
+    // max e: e < value, or absent
+    public long lower(long value, long absent) {
+        return getOrAbsent(lowerIndex(binarySearch(value)), absent);
+    }
+
+    // max e: e <= value, or absent; a found value is its own floor and ceiling, so only a miss decodes
+    public long floor(long value, long absent) {
+        int searchResult = binarySearch(value);
+        return searchResult >= 0 ? value : getOrAbsent(floorIndex(searchResult), absent);
+    }
+
+    // min e: e >= value, or absent
+    public long ceiling(long value, long absent) {
+        int searchResult = binarySearch(value);
+        return searchResult >= 0 ? value : getOrAbsent(ceilingIndex(searchResult), absent);
+    }
+
+    // min e: e > value, or absent
+    public long higher(long value, long absent) {
+        return getOrAbsent(higherIndex(binarySearch(value)), absent);
+    }
+
+    private long getOrAbsent(int index, long absent) {
+        return inRange(index) ? longAt(index) : absent;
+    }
+
+    public long firstLong() {
+        checkNotEmpty();
+        return longAt(firstIndex());
+    }
+
+    public long lastLong() {
+        checkNotEmpty();
+        return longAt(lastIndex());
+    }
+
+    public CompressedLongSet subSet(long fromElement, boolean fromInclusive, long toElement, boolean toInclusive) {
+        return (CompressedLongSet) subSet((Long) fromElement, fromInclusive, (Long) toElement, toInclusive);
+    }
+
+    public CompressedLongSet headSet(long toElement, boolean inclusive) {
+        return (CompressedLongSet) headSet((Long) toElement, inclusive);
+    }
+
+    public CompressedLongSet tailSet(long fromElement, boolean inclusive) {
+        return (CompressedLongSet) tailSet((Long) fromElement, inclusive);
+    }
+
+    @Override
+    public CompressedLongSet descendingSet() {
+        return (CompressedLongSet) super.descendingSet();
+    }
+
+    // the last decoded block, for sequential access
+    private class BlockCache {
+        private final long[] values = new long[BLOCK];
+        private int block = -1;
+
+        long get(int index) {
+            if (index / BLOCK != block) {
+                block = index / BLOCK;
+                decode(block, values);
+            }
+            return values[index % BLOCK];
+        }
+    }
+
+    @Override
+    public PrimitiveIterator.OfLong iterator() {
+        return new BlockIterator(reversed);
+    }
+
+    @Override
+    public PrimitiveIterator.OfLong descendingIterator() {
+        return new BlockIterator(!reversed);
+    }
+
+    private class BlockIterator extends ArrayIterator implements PrimitiveIterator.OfLong {
+        private final BlockCache cache = new BlockCache();
+
+        BlockIterator(boolean backwards) {
+            super(backwards);
+        }
+
+        @Override
+        public long nextLong() {
+            return cache.get(nextIndex());
+        }
+
+        // the inherited one decodes a block per element
+        @Override
+        public Long next() {
+            return nextLong();
+        }
+    }
+
+    @Override
+    public Spliterator.OfLong spliterator() {
+        return new BlockSpliterator(from, to);
+    }
+
+    private class BlockSpliterator extends ArraySpliterator implements Spliterator.OfLong {
+        private final BlockCache cache = new BlockCache();
+
+        BlockSpliterator(int low, int high) {
+            super(low, high);
+        }
+
+        @Override
+        BlockSpliterator split(int low, int high) {
+            return new BlockSpliterator(low, high);
+        }
+
+        @Override
+        public boolean tryAdvance(LongConsumer action) {
+            Objects.requireNonNull(action);
+            if (low >= high) {
+                return false;
+            }
+            action.accept(cache.get(nextIndex()));
+            return true;
+        }
+
+        // the inherited ones decode a block per element
+        @Override
+        public boolean tryAdvance(Consumer<? super Long> action) {
+            Objects.requireNonNull(action);
+            return tryAdvance((LongConsumer) action::accept);
+        }
+
+        @Override
+        public void forEachRemaining(LongConsumer action) {
+            Objects.requireNonNull(action);
+            while (low < high) {
+                action.accept(cache.get(nextIndex()));
+            }
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super Long> action) {
+            Objects.requireNonNull(action);
+            forEachRemaining((LongConsumer) action::accept);
+        }
+
+        @Override
+        public BlockSpliterator trySplit() {
+            return (BlockSpliterator) super.trySplit();
+        }
+    }
+
+    public LongStream longStream() {
+        return StreamSupport.longStream(spliterator(), false);
+    }
+
+    public long[] toLongArray() {
+        return longStream().toArray();
+    }
+
+    // bytes taken by the elements of the whole set, not counting object headers
+    public long compressedSize() {
+        return blocks.deltas().length + 8L * blocks.heads().length + 4L * blocks.offsets().length;
+    }
+}
@@ -0,0 +1,240 @@
+package info.kgeorgiy.ja.trofimov.arrayset;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.UnaryOperator;
+
+/*
+Thread-safe sorted set that publishes immutable `ArraySet` snapshots through an atomic reference.
+Reads take the current snapshot and never block or retry.
+Updates sort their batch, merge it with the snapshot into a new array in O(n + k) and swap it in,
+retrying the merge if another update won the race.
+
+Iterators and views are those of the snapshot they were created from, so they never change
+and don't support modification.
+ */
+public class ConcurrentArraySet<T> extends AbstractSet<T> implements NavigableSet<T> {
+    private final Comparator<? super T> comparator;
+    private final AtomicReference<ArraySet<T>> snapshot;
+
+    public ConcurrentArraySet() {
+        this(Collections.emptyList());
+    }
+
+    public ConcurrentArraySet(Comparator<? super T> comparator) {
+        this(Collections.emptyList(), comparator);
+    }
+
+    public ConcurrentArraySet(Collection<? extends T> collection) {
+        this(collection, null);
+    }
+
+    public ConcurrentArraySet(Collection<? extends T> collection, Comparator<? super T> comparator) {
+        this.comparator = comparator;
+        this.snapshot = new AtomicReference<>(new ArraySet<>(collection, comparator));
+    }
+
+    // current contents, consistent and immutable
+    public ArraySet<T> snapshot() {
+        return snapshot.get();
+    }
+
+    /*
+    Applies `change` to the current snapshot until the result is published.
+    Changes only remove or only add elements, so an unchanged size means an unchanged set.
+     */
+    private boolean update(UnaryOperator<ArraySet<T>> change) {
+        while (true) {
+            ArraySet<T> current = snapshot.get();
+            ArraySet<T> next = change.apply(current);
+            if (next.size() == current.size()) {
+                return false;
+            }
+            if (snapshot.compareAndSet(current, next)) {
+                return true;
+            }
+        }
+    }
+
+    private ArraySet<T> batch(Collection<? extends T> elements) {
+        return new ArraySet<>(elements, comparator);
+    }
+
+    @Override
+    public boolean add(T element) {
+        return addAll(Collections.singletonList(element));
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends T> elements) {
+        ArraySet<T> batch = batch(elements);
+        return update(current -> ArraySet.union(current, batch));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public boolean remove(Object element) {
+        if (!contains(element)) {
+            return false;
+        }
+        return removeAll(Collections.singletonList((T) element));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public boolean removeAll(Collection<?> elements) {
+        ArraySet<T> batch = batch((Collection<? extends T>) elements);
+        return update(current -> ArraySet.difference(current, batch));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public boolean retainAll(Collection<?> elements) {
+        ArraySet<T> batch = batch((Collection<? extends T>) elements);
+        return update(current -> ArraySet.intersection(current, batch));
+    }
+
+    @Override
+    public void clear() {
+        update(current -> new ArraySet<>(Collections.emptyList(), comparator));
+    }
+
+    // the rest of the array stays shared with the previous snapshot
+    @Override
+    public T pollFirst() {
+        while (true) {
+            ArraySet<T> current = snapshot.get();
+            if (current.isEmpty()) {
+                return null;
+            }
+            T first = current.first();
+            if (snapshot.compareAndSet(current, (ArraySet<T>) current.tailSet(first, false))) {
+                return first;
+            }
+        }
+    }
+
+    @Override
+    public T pollLast() {
+        while (true) {
+            ArraySet<T> current = snapshot.get();
+            if (current.isEmpty()) {
+                return null;
+            }
+            T last = current.last();
+            if (snapshot.compareAndSet(current, (ArraySet<T>) current.headSet(last, false))) {
+                return last;
+            }
+        }
+    }
+
+    @Override
+    public boolean contains(Object element) {
+        return snapshot().contains(element);
+    }
+
+    @Override
+    public boolean containsAll(Collection<?> elements) {
+        return snapshot().containsAll(elements);
+    }
+
+    @Override
+    public int size() {
+        return snapshot().size();
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        return snapshot().iterator();
+    }
+
+    @Override
+    public Iterator<T> descendingIterator() {
+        return snapshot().descendingIterator();
+    }
+
+    @Override
+    public Spliterator<T> spliterator() {
+        return snapshot().spliterator();
+    }
+
+    @Override
+    public Object[] toArray() {
+        return snapshot().toArray();
+    }
+
+    @Override
+    public <A> A[] toArray(A[] array) {
+        return snapshot().toArray(array);
+    }
+
+    @Override
+    public T lower(T element) {
+        return snapshot().lower(element);
+    }
+
+    @Override
+    public T floor(T element) {
+        return snapshot().floor(element);
+    }
+
+    @Override
+    public T ceiling(T element) {
+        return snapshot().ceiling(element);
+    }
+
+    @Override
+    public T higher(T element) {
+        return snapshot().higher(element);
+    }
+
+    @Override
+    public T first() {
+        return snapshot().first();
+    }
+
+    @Override
+    public T last() {
+        return snapshot().last();
+    }
+
+    @Override
+    public Comparator<? super T> comparator() {
+        return comparator;
+    }
+
+    @Override
+    public NavigableSet<T> descendingSet() {
+        return snapshot().descendingSet();
+    }
+
+    @Override
+    public NavigableSet<T> subSet(T fromElement, boolean fromInclusive, T toElement, boolean toInclusive) {
+        return snapshot().subSet(fromElement, fromInclusive, toElement, toInclusive);
+    }
+
+    @Override
+    public NavigableSet<T> headSet(T toElement, boolean inclusive) {
+        return snapshot().headSet(toElement, inclusive);
+    }
+
+    @Override
+    public NavigableSet<T> tailSet(T fromElement, boolean inclusive) {
+        return snapshot().tailSet(fromElement, inclusive);
+    }
+
+    @Override
+    public SortedSet<T> subSet(T fromElement, T toElement) {
+        return subSet(fromElement, true, toElement, false);
+    }
+
+    @Override
+    public SortedSet<T> headSet(T toElement) {
+        return headSet(toElement, false);
+    }
+
+    @Override
+    public SortedSet<T> tailSet(T fromElement) {
+        return tailSet(fromElement, true);
+    }
+}
@@ -0,0 +1,270 @@
+package info.kgeorgiy.ja.trofimov.arrayset;
+
+import java.io.ByteArrayOutputStream;
+import java.util.*;
+import java.util.function.Consumer;
+
+/*
+Immutable set of strings in natural order, front-coded, with the views of `ArraySet`.
+
+All strings are UTF-8 in one byte array, in buckets of 16. Every string is written as the length
+of the prefix it shares with the previous one, then the length and bytes of the rest;
+the first string of a bucket shares nothing, so any bucket decodes on its own.
+A lookup binary searches the bucket heads and scans one bucket; iteration decodes every bucket once.
+Sorted paths and URLs share most of their bytes with the neighbours and take a few bytes each.
+ */
+public class FrontCodedStringSet extends AbstractArraySet<String> {
+    private static final int BUCKET = 16;
+
+    private record Buckets(byte[] bytes, int[] offsets, int size) {
+    }
+
+    // shared by the set and all its views
+    private final Buckets buckets;
+
+    public FrontCodedStringSet() {
+        this(Collections.emptyList());
+    }
+
+    public FrontCodedStringSet(Collection<? extends String> collection) {
+        this(encode(new ArraySet<String>(collection).toArray()));
+    }
+
+    private FrontCodedStringSet(Buckets buckets) {
+        this(buckets, 0, buckets.size(), false, null);
+    }
+
+    private FrontCodedStringSet(Buckets buckets, int from, int to, boolean reversed, Comparator<? super String> viewComparator) {
+        super(from, to, reversed, null, viewComparator);
+        this.buckets = buckets;
+    }
+
+    private static Buckets encode(Object[] sorted) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int[] offsets = new int[(sorted.length + BUCKET - 1) / BUCKET + 1];
+        byte[] previous = new byte[0];
+        for (int i = 0; i < sorted.length; i++) {
+            byte[] current = Utf8.encode((String) sorted[i]);
+            int shared = 0;
+            if (i % BUCKET == 0) {
+                offsets[i / BUCKET] = out.size();
+            } else {
+                // distinct strings differ somewhere in their bytes
+                shared = Arrays.mismatch(previous, current);
+            }
+            writeVarint(out, shared);
+            writeVarint(out, current.length - shared);
+            out.write(current, shared, current.length - shared);
+            previous = current;
+        }
+        offsets[offsets.length - 1] = out.size();
+        return new Buckets(out.toByteArray(), offsets, sorted.length);
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write(value | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    // decodes the strings of a bucket one by one into a reused buffer
+    private static class Reader {
+        private final byte[] bytes;
+        private final int[] offsets;
+        private byte[] current = new byte[64];
+        private int length;
+        private int position;
+
+        Reader(Buckets buckets) {
+            this.bytes = buckets.bytes();
+            this.offsets = buckets.offsets();
+        }
+
+        void seek(int bucket) {
+            position = offsets[bucket];
+            length = 0;
+        }
+
+        void next() {
+            int shared = readVarint();
+            int suffix = readVarint();
+            length = shared + suffix;
+            if (length > current.length) {
+                current = Arrays.copyOf(current, Math.max(length, 2 * current.length));
+            }
+            System.arraycopy(bytes, position, current, shared, suffix);
+            position += suffix;
+        }
+
+        private int readVarint() {
+            int value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = bytes[position++];
+                value |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            return value;
+        }
+
+        int compareTo(String value) {
+            return Utf8.compare(current, 0, length, value);
+        }
+
+        String string() {
+            return Utf8.decode(current, 0, length);
+        }
+    }
+
+    /*
+    Like `Arrays.binarySearch` over the whole set; scans the bucket only up to the answer.
+     */
+    private int searchAll(String value) {
+        Reader reader = new Reader(buckets);
+        // the last bucket with the head not greater than value
+        int low = 0;
+        int high = buckets.offsets().length - 2;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            reader.seek(middle);
+            reader.next();
+            int comparison = reader.compareTo(value);
+            if (comparison < 0) {
+                low = middle + 1;
+            } else if (comparison > 0) {
+                high = middle - 1;
+            } else {
+                return middle * BUCKET;
+            }
+        }
+        if (high < 0) {
+            return -1;
+        }
+        reader.seek(high);
+        reader.next();
+        int start = high * BUCKET;
+        int count = Math.min(BUCKET, buckets.size() - start);
+        for (int i = 1; i < count; i++) {
+            reader.next();
+            int comparison = reader.compareTo(value);
+            if (comparison >= 0) {
+                return comparison == 0 ? start + i : -1 - (start + i);
+            }
+        }
+        return -1 - (start + count);
+    }
+
+    @Override
+    FrontCodedStringSet view(int from, int to, boolean reversed, Comparator<? super String> viewComparator) {
+        return new FrontCodedStringSet(buckets, from, to, reversed, viewComparator);
+    }
+
+    @Override
+    String elementAt(int index) {
+        Reader reader = new Reader(buckets);
+        reader.seek(index / BUCKET);
+        for (int i = index % BUCKET; i >= 0; i--) {
+            reader.next();
+        }
+        return reader.string();
+    }
+
+    // the search covers the whole set, a view only its part
+    @Override
+    int binarySearch(Object value) {
+        int searchResult = searchAll(Objects.requireNonNull((String) value));
+        int position = lowerBound(searchResult);
+        return position < from ? -1 - from : position >= to ? -1 - to : searchResult;
+    }
+
+    @Override
+    public FrontCodedStringSet descendingSet() {
+        return (FrontCodedStringSet) super.descendingSet();
+    }
+
+    // the last decoded bucket, for sequential access
+    private class BucketCache {
+        private final Reader reader = new Reader(buckets);
+        private final String[] strings = new String[BUCKET];
+        private int bucket = -1;
+
+        String get(int index) {
+            if (index / BUCKET != bucket) {
+                bucket = index / BUCKET;
+                reader.seek(bucket);
+                for (int i = 0; i < Math.min(BUCKET, buckets.size() - bucket * BUCKET); i++) {
+                    reader.next();
+                    strings[i] = reader.string();
+                }
+            }
+            return strings[index % BUCKET];
+        }
+    }
+
+    @Override
+    public Iterator<String> iterator() {
+        return new BucketIterator(reversed);
+    }
+
+    @Override
+    public Iterator<String> descendingIterator() {
+        return new BucketIterator(!reversed);
+    }
+
+    private class BucketIterator extends ArrayIterator {
+        private final BucketCache cache = new BucketCache();
+
+        BucketIterator(boolean backwards) {
+            super(backwards);
+        }
+
+        @Override
+        public String next() {
+            return cache.get(nextIndex());
+        }
+    }
+
+    @Override
+    public Spliterator<String> spliterator() {
+        return new BucketSpliterator(from, to);
+    }
+
+    private class BucketSpliterator extends ArraySpliterator {
+        private final BucketCache cache = new BucketCache();
+
+        BucketSpliterator(int low, int high) {
+            super(low, high);
+        }
+
+        @Override
+        BucketSpliterator split(int low, int high) {
+            return new BucketSpliterator(low, high);
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super String> action) {
+            Objects.requireNonNull(action);
+            if (low >= high) {
+                return false;
+            }
+            action.accept(cache.get(nextIndex()));
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super String> action) {
+            Objects.requireNonNull(action);
+            while (low < high) {
+                action.accept(cache.get(nextIndex()));
+            }
+        }
+    }
+
+    // bytes taken by the strings of the whole set, not counting object headers
+    public long compressedSize() {
+        return buckets.bytes().length + 4L * buckets.offsets().length;
+    }
+}
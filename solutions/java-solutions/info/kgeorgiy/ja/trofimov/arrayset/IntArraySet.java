@@ -0,0 +1,378 @@
+package info.kgeorgiy.ja.trofimov.arrayset;
+
+import java.util.*;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+import java.util.stream.StreamSupport;
+
+/*
+Immutable set of ints in natural order, stored in an `int[]`, with the views of `ArraySet`.
+Besides `NavigableSet<Integer>`, it has unboxed lookups, iterators and streams;
+a lookup that finds nothing returns the given `absent` value.
+ */
+public class IntArraySet extends AbstractArraySet<Integer> {
+    private static final int PARALLEL_SORT_THRESHOLD = 1 << 16;
+
+    // ascending, shared by the set and all its views
+    private final int[] data;
+    // optional search layout of the whole `data`, shared by views
+    private final EytzingerIndex index;
+    // search `data` by interpolation, see withInterpolationSearch
+    private final boolean interpolation;
+
+    public IntArraySet() {
+        this(new int[0], null);
+    }
+
+    public IntArraySet(int... values) {
+        this(sortDistinct(values.clone()), null);
+    }
+
+    public IntArraySet(Collection<? extends Integer> collection) {
+        this(sortDistinct(collection.stream().mapToInt(Integer::intValue).toArray()), null);
+    }
+
+    private IntArraySet(int[] data, Comparator<? super Integer> viewComparator) {
+        this(data, 0, data.length, false, viewComparator, null, false);
+    }
+
+    private IntArraySet(int[] data, int from, int to, boolean reversed,
+                        Comparator<? super Integer> viewComparator, EytzingerIndex index, boolean interpolation) {
+        super(from, to, reversed, null, viewComparator);
+        this.data = data;
+        this.index = index;
+        this.interpolation = interpolation;
+    }
+
+    /*
+    Returns this set with an Eytzinger-ordered copy of its array,
+    used by the unboxed `contains`, `lower`, `floor`, `ceiling` and `higher`.
+    Faster on sets larger than the cache, at the cost of one more int[] of the same length.
+    Iteration, views and the boxed methods still use the sorted array; views of the result share the index.
+    Sets of 2^30 elements and more are returned as is, as slots of their tree would overflow int.
+     */
+    public IntArraySet withEytzingerLayout() {
+        return index != null || data.length >= 1 << 30 ? this : new IntArraySet(data, from, to, reversed, comparator(), new EytzingerIndex(data), interpolation);
+    }
+
+    /*
+    Returns this set searched by interpolation: every probe guesses the position of the value
+    from the values at the ends of the range, as if the keys were evenly spread.
+    On smooth key distributions a search takes a few probes instead of log n.
+    A guess that doesn't halve the range is followed by a bisection, so no search is worse than twice binary.
+    Views of the result search the same way.
+     */
+    public IntArraySet withInterpolationSearch() {
+        return interpolation ? this : new IntArraySet(data, from, to, reversed, comparator(), index, true);
+    }
+
+    /*
+    Copy of a sorted array in Eytzinger (BFS) order: the children of tree[k] are tree[2k] and tree[2k + 1].
+    A search reads the tree level by level, so the top levels stay in cache for all searches,
+    and both children of a node, the only candidates for the next step, share a cache line.
+    The 16 descendants of a node 4 levels below also share a line, so every step touches it in advance:
+    the load doesn't block the search and works as a prefetch, which Java lacks.
+    Searches return slots in the tree, 0 if there is no such element.
+     */
+    private static final class EytzingerIndex {
+        // 1-based, tree[0] is unused
+        final int[] tree;
+        private final int last;
+
+        EytzingerIndex(int[] sorted) {
+            this.tree = new int[sorted.length + 1];
+            this.last = sorted.length;
+            build(sorted, 0, 1);
+        }
+
+        // fills the subtree of k in order with sorted[next...], returns the next unused index
+        private int build(int[] sorted, int next, int k) {
+            if (k < tree.length) {
+                next = build(sorted, next, 2 * k);
+                tree[k] = sorted[next++];
+                next = build(sorted, next, 2 * k + 1);
+            }
+            return next;
+        }
+
+        private static int sink;
+
+        /*
+        Uses the touched values, otherwise JIT drops the loads.
+        They never match in practice, so threads don't write to the shared field.
+         */
+        private static void keep(int touched) {
+            if (touched == 0x9E3779B9) {
+                sink = touched;
+            }
+        }
+
+        // min e: e > value if strict, e >= value otherwise
+        int above(int value, boolean strict) {
+            int k = 1;
+            int touched = 0;
+            while (k < tree.length) {
+                touched ^= tree[(int) Math.min((long) k << 4, last)];
+                k = 2 * k + ((strict ? tree[k] <= value : tree[k] < value) ? 1 : 0);
+            }
+            keep(touched);
+            // the answer is the last node where the search went left: drop the right turns after it and that turn
+            return k >> (Integer.numberOfTrailingZeros(~k) + 1);
+        }
+
+        // max e: e < value if strict, e <= value otherwise
+        int below(int value, boolean strict) {
+            int k = 1;
+            int touched = 0;
+            while (k < tree.length) {
+                touched ^= tree[(int) Math.min((long) k << 4, last)];
+                k = 2 * k + ((strict ? tree[k] < value : tree[k] <= value) ? 1 : 0);
+            }
+            keep(touched);
+            // the answer is the last node where the search went right
+            return k >> (Integer.numberOfTrailingZeros(k) + 1);
+        }
+    }
+
+    /*
+    The index covers the whole array and a view is its range [data[from], data[to - 1]],
+    so the nearest element of the array is moved into the range or rejected.
+     */
+    private int indexAbove(int value, boolean strict, int absent) {
+        int slot = index.above(value, strict);
+        return slot != 0 && !isEmpty() && index.tree[slot] <= data[to - 1]
+                ? Math.max(index.tree[slot], data[from]) : absent;
+    }
+
+    private int indexBelow(int value, boolean strict, int absent) {
+        int slot = index.below(value, strict);
+        return slot != 0 && !isEmpty() && index.tree[slot] >= data[from]
+                ? Math.min(index.tree[slot], data[to - 1]) : absent;
+    }
+
+    // sorts in place, unless sorted already, and removes duplicates
+    private static int[] sortDistinct(int[] values) {
+        boolean sorted = true;
+        for (int i = 1; i < values.length && sorted; i++) {
+            sorted = values[i - 1] < values[i];
+        }
+        if (sorted) {
+            return values;
+        }
+        if (values.length >= PARALLEL_SORT_THRESHOLD) {
+            Arrays.parallelSort(values);
+        } else {
+            Arrays.sort(values);
+        }
+        int size = 1;
+        for (int i = 1; i < values.length; i++) {
+            if (values[size - 1] != values[i]) {
+                values[size++] = values[i];
+            }
+        }
+        return size == values.length ? values : Arrays.copyOf(values, size);
+    }
+
+    @Override
+    IntArraySet view(int from, int to, boolean reversed, Comparator<? super Integer> viewComparator) {
+        return new IntArraySet(data, from, to, reversed, viewComparator, index, interpolation);
+    }
+
+    @Override
+    Integer elementAt(int index) {
+        return data[index];
+    }
+
+    @Override
+    int binarySearch(Object value) {
+        return binarySearch((int) (Integer) value);
+    }
+
+    int binarySearch(int value) {
+        return interpolation ? interpolationSearch(value) : Arrays.binarySearch(data, from, to, value);
+    }
+
+    // the result of `Arrays.binarySearch`
+    private int interpolationSearch(int value) {
+        int low = from;
+        int high = to - 1;
+        while (low <= high) {
+            if (value < data[low]) {
+                return -1 - low;
+            }
+            if (value > data[high]) {
+                return -2 - high;
+            }
+            // data[low] <= value <= data[high], in double, as the differences may overflow
+            int range = high - low;
+            int guess = range == 0 ? low
+                    : low + (int) (((double) value - data[low]) / ((double) data[high] - data[low]) * range);
+            if (data[guess] < value) {
+                low = guess + 1;
+            } else if (data[guess] > value) {
+                high = guess - 1;
+            } else {
+                return guess;
+            }
+            if (high - low > range / 2 && low <= high) {
+                int middle = (low + high) >>> 1;
+                if (data[middle] < value) {
+                    low = middle + 1;
+                } else if (data[middle] > value) {
+                    high = middle - 1;
+                } else {
+                    return middle;
+                }
+            }
+        }
+        return -1 - low;
+    }
+
+    public boolean contains(int value) {
+        if (index != null) {
+            int slot = index.above(value, false);
+            return slot != 0 && index.tree[slot] == value && !isEmpty() && data[from] <= value && value <= data[to - 1];
+        }
+        return binarySearch(value) >= 0;
+    }
+
+    // max e: e < value, or absent
+    public int lower(int value, int absent) {
+        if (index != null) {
+            return reversed ? indexAbove(value, true, absent) : indexBelow(value, true, absent);
+        }
+        return getOrAbsent(lowerIndex(binarySearch(value)), absent);
+    }
+
+    // max e: e <= value, or absent
+    public int floor(int value, int absent) {
+        if (index != null) {
+            return reversed ? indexAbove(value, false, absent) : indexBelow(value, false, absent);
+        }
+        return getOrAbsent(floorIndex(binarySearch(value)), absent);
+    }
+
+    // min e: e >= value, or absent
+    public int ceiling(int value, int absent) {
+        if (index != null) {
+            return reversed ? indexBelow(value, false, absent) : indexAbove(value, false, absent);
+        }
+        return getOrAbsent(ceilingIndex(binarySearch(value)), absent);
+    }
+
+    // min e: e > value, or absent
+    public int higher(int value, int absent) {
+        if (index != null) {
+            return reversed ? indexBelow(value, true, absent) : indexAbove(value, true, absent);
+        }
+        return getOrAbsent(higherIndex(binarySearch(value)), absent);
+    }
+
+    private int getOrAbsent(int index, int absent) {
+        return inRange(index) ? data[index] : absent;
+    }
+
+    public int firstInt() {
+        checkNotEmpty();
+        return data[firstIndex()];
+    }
+
+    public int lastInt() {
+        checkNotEmpty();
+        return data[lastIndex()];
+    }
+
+    public IntArraySet subSet(int fromElement, boolean fromInclusive, int toElement, boolean toInclusive) {
+        return (IntArraySet) subSet((Integer) fromElement, fromInclusive, (Integer) toElement, toInclusive);
+    }
+
+    public IntArraySet headSet(int toElement, boolean inclusive) {
+        return (IntArraySet) headSet((Integer) toElement, inclusive);
+    }
+
+    public IntArraySet tailSet(int fromElement, boolean inclusive) {
+        return (IntArraySet) tailSet((Integer) fromElement, inclusive);
+    }
+
+    @Override
+    public IntArraySet descendingSet() {
+        return (IntArraySet) super.descendingSet();
+    }
+
+    @Override
+    public PrimitiveIterator.OfInt iterator() {
+        return new IntIterator(reversed);
+    }
+
+    @Override
+    public PrimitiveIterator.OfInt descendingIterator() {
+        return new IntIterator(!reversed);
+    }
+
+    private class IntIterator extends ArrayIterator implements PrimitiveIterator.OfInt {
+        IntIterator(boolean backwards) {
+            super(backwards);
+        }
+
+        @Override
+        public int nextInt() {
+            return data[nextIndex()];
+        }
+    }
+
+    @Override
+    public Spliterator.OfInt spliterator() {
+        return new IntSpliterator(from, to);
+    }
+
+    private class IntSpliterator extends ArraySpliterator implements Spliterator.OfInt {
+        IntSpliterator(int low, int high) {
+            super(low, high);
+        }
+
+        @Override
+        IntSpliterator split(int low, int high) {
+            return new IntSpliterator(low, high);
+        }
+
+        @Override
+        public boolean tryAdvance(IntConsumer action) {
+            Objects.requireNonNull(action);
+            if (low >= high) {
+                return false;
+            }
+            action.accept(data[nextIndex()]);
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(IntConsumer action) {
+            Objects.requireNonNull(action);
+            while (low < high) {
+                action.accept(data[nextIndex()]);
+            }
+        }
+
+        @Override
+        public IntSpliterator trySplit() {
+            return (IntSpliterator) super.trySplit();
+        }
+    }
+
+    public IntStream intStream() {
+        return StreamSupport.intStream(spliterator(), false);
+    }
+
+    public int[] toIntArray() {
+        return intStream().toArray();
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 0;
+        for (int i = from; i < to; i++) {
+            hash += data[i];
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,226 @@
+package info.kgeorgiy.ja.trofimov.arrayset;
+
+import java.util.*;
+
+/*
+Immutable set of disjoint closed intervals of longs, with the views of `ArraySet`.
+
+Overlapping and adjacent intervals are merged at construction, so the intervals are ordered
+both by start and by end and are stored as two long[] of endpoints.
+Point and range queries are binary searches over them that allocate nothing but the returned view.
+As a `NavigableSet<Interval>`, intervals are ordered by start; views of a view keep its range.
+ */
+public class IntervalSet extends AbstractArraySet<IntervalSet.Interval> {
+    public record Interval(long start, long end) {
+        public Interval {
+            if (start > end) {
+                throw new IllegalArgumentException("Interval start " + start + " is greater than end " + end);
+            }
+        }
+
+        public boolean contains(long point) {
+            return start <= point && point <= end;
+        }
+    }
+
+    // the order of stored intervals, which have distinct starts
+    private static final Comparator<Interval> ORDER =
+            Comparator.comparingLong(Interval::start).thenComparingLong(Interval::end);
+
+    // ascending and disjoint, shared by the set and all its views
+    private final long[] starts;
+    private final long[] ends;
+
+    public IntervalSet() {
+        this(new long[0], new long[0]);
+    }
+
+    public IntervalSet(Collection<? extends Interval> intervals) {
+        this(builder().addAll(intervals).build());
+    }
+
+    private IntervalSet(IntervalSet set) {
+        this(set.starts, set.ends);
+    }
+
+    private IntervalSet(long[] starts, long[] ends) {
+        this(starts, ends, 0, starts.length, false, ORDER);
+    }
+
+    private IntervalSet(long[] starts, long[] ends, int from, int to, boolean reversed,
+                        Comparator<? super Interval> viewComparator) {
+        super(from, to, reversed, ORDER, viewComparator);
+        this.starts = starts;
+        this.ends = ends;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static final class Builder {
+        private long[] starts = new long[16];
+        private long[] ends = new long[16];
+        private int size;
+        private boolean sorted = true;
+
+        private Builder() {
+        }
+
+        public Builder add(long start, long end) {
+            if (start > end) {
+                throw new IllegalArgumentException("Interval start " + start + " is greater than end " + end);
+            }
+            if (size == starts.length) {
+                starts = Arrays.copyOf(starts, 2 * size);
+                ends = Arrays.copyOf(ends, 2 * size);
+            }
+            sorted &= size == 0 || starts[size - 1] <= start;
+            starts[size] = start;
+            ends[size] = end;
+            size++;
+            return this;
+        }
+
+        public Builder add(Interval interval) {
+            return add(interval.start(), interval.end());
+        }
+
+        public Builder addAll(Collection<? extends Interval> intervals) {
+            for (Interval interval : intervals) {
+                add(interval);
+            }
+            return this;
+        }
+
+        public IntervalSet build() {
+            long[] sortedStarts = Arrays.copyOf(starts, size);
+            long[] sortedEnds = Arrays.copyOf(ends, size);
+            if (!sorted) {
+                Interval[] intervals = new Interval[size];
+                for (int i = 0; i < size; i++) {
+                    intervals[i] = new Interval(starts[i], ends[i]);
+                }
+                Arrays.sort(intervals, ORDER);
+                for (int i = 0; i < size; i++) {
+                    sortedStarts[i] = intervals[i].start();
+                    sortedEnds[i] = intervals[i].end();
+                }
+            }
+            return coalesce(sortedStarts, sortedEnds, size);
+        }
+    }
+
+    /*
+    Merges intervals sorted by start in place, while the next one overlaps or touches the last merged one.
+    Adjacency is checked as end + 1 == start, which overflows only when end is Long.MAX_VALUE,
+    and then every next interval overlaps anyway.
+     */
+    private static IntervalSet coalesce(long[] starts, long[] ends, int length) {
+        int size = 0;
+        for (int i = 0; i < length; i++) {
+            if (size > 0 && (starts[i] <= ends[size - 1] || ends[size - 1] + 1 == starts[i])) {
+                ends[size - 1] = Math.max(ends[size - 1], ends[i]);
+            } else {
+                starts[size] = starts[i];
+                ends[size] = ends[i];
+                size++;
+            }
+        }
+        return new IntervalSet(Arrays.copyOf(starts, size), Arrays.copyOf(ends, size));
+    }
+
+    @Override
+    IntervalSet view(int from, int to, boolean reversed, Comparator<? super Interval> viewComparator) {
+        return new IntervalSet(starts, ends, from, to, reversed, viewComparator);
+    }
+
+    @Override
+    Interval elementAt(int index) {
+        return new Interval(starts[index], ends[index]);
+    }
+
+    @Override
+    int binarySearch(Object value) {
+        Interval interval = (Interval) value;
+        int index = Arrays.binarySearch(starts, from, to, interval.start());
+        if (index < 0 || ends[index] == interval.end()) {
+            return index;
+        }
+        return ends[index] < interval.end() ? -2 - index : -1 - index;
+    }
+
+    // the last interval in [from, to) starting at or before point, or from - 1
+    private int lastStartingBefore(long point) {
+        return upperBound(Arrays.binarySearch(starts, from, to, point)) - 1;
+    }
+
+    public boolean containsPoint(long point) {
+        int index = lastStartingBefore(point);
+        return index >= from && ends[index] >= point;
+    }
+
+    // the intervals of this set that share a point with [start, end]
+    public IntervalSet overlapping(long start, long end) {
+        if (start > end) {
+            throw new IllegalArgumentException("Interval start " + start + " is greater than end " + end);
+        }
+        int low = lowerBound(Arrays.binarySearch(ends, from, to, start));
+        int high = lastStartingBefore(end) + 1;
+        return view(low, Math.max(low, high), reversed, comparator());
+    }
+
+    public IntervalSet overlapping(Interval interval) {
+        return overlapping(interval.start(), interval.end());
+    }
+
+    /*
+    Points in either set or in both, as a new set ordered as `first`.
+    Both are linear merges of the endpoint arrays.
+     */
+    public static IntervalSet union(IntervalSet first, IntervalSet second) {
+        long[] starts = new long[first.size() + second.size()];
+        long[] ends = new long[starts.length];
+        int i = first.from;
+        int j = second.from;
+        for (int k = 0; k < starts.length; k++) {
+            boolean fromFirst = j == second.to || i < first.to && first.starts[i] <= second.starts[j];
+            starts[k] = fromFirst ? first.starts[i] : second.starts[j];
+            ends[k] = fromFirst ? first.ends[i++] : second.ends[j++];
+        }
+        return orderedAs(first, coalesce(starts, ends, starts.length));
+    }
+
+    public static IntervalSet intersection(IntervalSet first, IntervalSet second) {
+        long[] starts = new long[first.size() + second.size()];
+        long[] ends = new long[starts.length];
+        int size = 0;
+        int i = first.from;
+        int j = second.from;
+        while (i < first.to && j < second.to) {
+            long start = Math.max(first.starts[i], second.starts[j]);
+            long end = Math.min(first.ends[i], second.ends[j]);
+            if (start <= end) {
+                starts[size] = start;
+                ends[size] = end;
+                size++;
+            }
+            // the interval ending first can't meet anything else
+            if (first.ends[i] < second.ends[j]) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return orderedAs(first, new IntervalSet(Arrays.copyOf(starts, size), Arrays.copyOf(ends, size)));
+    }
+
+    private static IntervalSet orderedAs(IntervalSet order, IntervalSet set) {
+        return order.reversed ? set.descendingSet() : set;
+    }
+
+    @Override
+    public IntervalSet descendingSet() {
+        return (IntervalSet) super.descendingSet();
+    }
+}
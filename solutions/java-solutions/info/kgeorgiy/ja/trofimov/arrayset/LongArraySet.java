@@ -0,0 +1,378 @@
+package info.kgeorgiy.ja.trofimov.arrayset;
+
+import java.util.*;
+import java.util.function.LongConsumer;
+import java.util.stream.LongStream;
+import java.util.stream.StreamSupport;
+
+/*
+Immutable set of longs in natural order, stored in a `long[]`, with the views of `ArraySet`.
+Besides `NavigableSet<Long>`, it has unboxed lookups, iterators and streams;
+a lookup that finds nothing returns the given `absent` value.
+ */
+public class LongArraySet extends AbstractArraySet<Long> {
+    private static final int PARALLEL_SORT_THRESHOLD = 1 << 16;
+
+    // ascending, shared by the set and all its views
+    private final long[] data;
+    // optional search layout of the whole `data`, shared by views
+    private final EytzingerIndex index;
+    // search `data` by interpolation, see withInterpolationSearch
+    private final boolean interpolation;
+
+    public LongArraySet() {
+        this(new long[0], null);
+    }
+
+    public LongArraySet(long... values) {
+        this(sortDistinct(values.clone()), null);
+    }
+
+    public LongArraySet(Collection<? extends Long> collection) {
+        this(sortDistinct(collection.stream().mapToLong(Long::longValue).toArray()), null);
+    }
+
+    private LongArraySet(long[] data, Comparator<? super Long> viewComparator) {
+        this(data, 0, data.length, false, viewComparator, null, false);
+    }
+
+    private LongArraySet(long[] data, int from, int to, boolean reversed,
+                         Comparator<? super Long> viewComparator, EytzingerIndex index, boolean interpolation) {
+        super(from, to, reversed, null, viewComparator);
+        this.data = data;
+        this.index = index;
+        this.interpolation = interpolation;
+    }
+
+    /*
+    Returns this set with an Eytzinger-ordered copy of its array,
+    used by the unboxed `contains`, `lower`, `floor`, `ceiling` and `higher`.
+    Faster on sets larger than the cache, at the cost of one more long[] of the same length.
+    Iteration, views and the boxed methods still use the sorted array; views of the result share the index.
+    Sets of 2^30 elements and more are returned as is, as slots of their tree would overflow int.
+     */
+    public LongArraySet withEytzingerLayout() {
+        return index != null || data.length >= 1 << 30 ? this : new LongArraySet(data, from, to, reversed, comparator(), new EytzingerIndex(data), interpolation);
+    }
+
+    /*
+    Returns this set searched by interpolation: every probe guesses the position of the value
+    from the values at the ends of the range, as if the keys were evenly spread.
+    On smooth key distributions a search takes a few probes instead of log n.
+    A guess that doesn't halve the range is followed by a bisection, so no search is worse than twice binary.
+    Views of the result search the same way.
+     */
+    public LongArraySet withInterpolationSearch() {
+        return interpolation ? this : new LongArraySet(data, from, to, reversed, comparator(), index, true);
+    }
+
+    /*
+    Copy of a sorted array in Eytzinger (BFS) order: the children of tree[k] are tree[2k] and tree[2k + 1].
+    A search reads the tree level by level, so the top levels stay in cache for all searches,
+    and both children of a node, the only candidates for the next step, share a cache line.
+    The 8 descendants of a node 3 levels below also share a line, so every step touches it in advance:
+    the load doesn't block the search and works as a prefetch, which Java lacks.
+    Searches return slots in the tree, 0 if there is no such element.
+     */
+    private static final class EytzingerIndex {
+        // 1-based, tree[0] is unused
+        final long[] tree;
+        private final int last;
+
+        EytzingerIndex(long[] sorted) {
+            this.tree = new long[sorted.length + 1];
+            this.last = sorted.length;
+            build(sorted, 0, 1);
+        }
+
+        // fills the subtree of k in order with sorted[next...], returns the next unused index
+        private int build(long[] sorted, int next, int k) {
+            if (k < tree.length) {
+                next = build(sorted, next, 2 * k);
+                tree[k] = sorted[next++];
+                next = build(sorted, next, 2 * k + 1);
+            }
+            return next;
+        }
+
+        private static long sink;
+
+        /*
+        Uses the touched values, otherwise JIT drops the loads.
+        They never match in practice, so threads don't write to the shared field.
+         */
+        private static void keep(long touched) {
+            if (touched == 0x9E3779B97F4A7C15L) {
+                sink = touched;
+            }
+        }
+
+        // min e: e > value if strict, e >= value otherwise
+        int above(long value, boolean strict) {
+            int k = 1;
+            long touched = 0;
+            while (k < tree.length) {
+                touched ^= tree[(int) Math.min((long) k << 3, last)];
+                k = 2 * k + ((strict ? tree[k] <= value : tree[k] < value) ? 1 : 0);
+            }
+            keep(touched);
+            // the answer is the last node where the search went left: drop the right turns after it and that turn
+            return k >> (Integer.numberOfTrailingZeros(~k) + 1);
+        }
+
+        // max e: e < value if strict, e <= value otherwise
+        int below(long value, boolean strict) {
+            int k = 1;
+            long touched = 0;
+            while (k < tree.length) {
+                touched ^= tree[(int) Math.min((long) k << 3, last)];
+                k = 2 * k + ((strict ? tree[k] < value : tree[k] <= value) ? 1 : 0);
+            }
+            keep(touched);
+            // the answer is the last node where the search went right
+            return k >> (Integer.numberOfTrailingZeros(k) + 1);
+        }
+    }
+
+    /*
+    The index covers the whole array and a view is its range [data[from], data[to - 1]],
+    so the nearest element of the array is moved into the range or rejected.
+     */
+    private long indexAbove(long value, boolean strict, long absent) {
+        int slot = index.above(value, strict);
+        return slot != 0 && !isEmpty() && index.tree[slot] <= data[to - 1]
+                ? Math.max(index.tree[slot], data[from]) : absent;
+    }
+
+    private long indexBelow(long value, boolean strict, long absent) {
+        int slot = index.below(value, strict);
+        return slot != 0 && !isEmpty() && index.tree[slot] >= data[from]
+                ? Math.min(index.tree[slot], data[to - 1]) : absent;
+    }
+
+    // sorts in place, unless sorted already, and removes duplicates
+    static long[] sortDistinct(long[] values) {
+        boolean sorted = true;
+        for (int i = 1; i < values.length && sorted; i++) {
+            sorted = values[i - 1] < values[i];
+        }
+        if (sorted) {
+            return values;
+        }
+        if (values.length >= PARALLEL_SORT_THRESHOLD) {
+            Arrays.parallelSort(values);
+        } else {
+            Arrays.sort(values);
+        }
+        int size = 1;
+        for (int i = 1; i < values.length; i++) {
+            if (values[size - 1] != values[i]) {
+                values[size++] = values[i];
+            }
+        }
+        return size == values.length ? values : Arrays.copyOf(values, size);
+    }
+
+    @Override
+    LongArraySet view(int from, int to, boolean reversed, Comparator<? super Long> viewComparator) {
+        return new LongArraySet(data, from, to, reversed, viewComparator, index, interpolation);
+    }
+
+    @Override
+    Long elementAt(int index) {
+        return data[index];
+    }
+
+    @Override
+    int binarySearch(Object value) {
+        return binarySearch((long) (Long) value);
+    }
+
+    int binarySearch(long value) {
+        return interpolation ? interpolationSearch(value) : Arrays.binarySearch(data, from, to, value);
+    }
+
+    // the result of `Arrays.binarySearch`
+    private int interpolationSearch(long value) {
+        int low = from;
+        int high = to - 1;
+        while (low <= high) {
+            if (value < data[low]) {
+                return -1 - low;
+            }
+            if (value > data[high]) {
+                return -2 - high;
+            }
+            // data[low] <= value <= data[high], in double, as the differences may overflow
+            int range = high - low;
+            int guess = range == 0 ? low
+                    : low + (int) (((double) value - data[low]) / ((double) data[high] - data[low]) * range);
+            if (data[guess] < value) {
+                low = guess + 1;
+            } else if (data[guess] > value) {
+                high = guess - 1;
+            } else {
+                return guess;
+            }
+            if (high - low > range / 2 && low <= high) {
+                int middle = (low + high) >>> 1;
+                if (data[middle] < value) {
+                    low = middle + 1;
+                } else if (data[middle] > value) {
+                    high = middle - 1;
+                } else {
+                    return middle;
+                }
+            }
+        }
+        return -1 - low;
+    }
+
+    public boolean contains(long value) {
+        if (index != null) {
+            int slot = index.above(value, false);
+            return slot != 0 && index.tree[slot] == value && !isEmpty() && data[from] <= value && value <= data[to - 1];
+        }
+        return binarySearch(value) >= 0;
+    }
+
+    // max e: e < value, or absent
+    public long lower(long value, long absent) {
+        if (index != null) {
+            return reversed ? indexAbove(value, true, absent) : indexBelow(value, true, absent);
+        }
+        return getOrAbsent(lowerIndex(binarySearch(value)), absent);
+    }
+
+    // max e: e <= value, or absent
+    public long floor(long value, long absent) {
+        if (index != null) {
+            return reversed ? indexAbove(value, false, absent) : indexBelow(value, false, absent);
+        }
+        return getOrAbsent(floorIndex(binarySearch(value)), absent);
+    }
+
+    // min e: e >= value, or absent
+    public long ceiling(long value, long absent) {
+        if (index != null) {
+            return reversed ? indexBelow(value, false, absent) : indexAbove(value, false, absent);
+        }
+        return getOrAbsent(ceilingIndex(binarySearch(value)), absent);
+    }
+
+    // min e: e > value, or absent
+    public long higher(long value, long absent) {
+        if (index != null) {
+            return reversed ? indexBelow(value, true, absent) : indexAbove(value, true, absent);
+        }
+        return getOrAbsent(higherIndex(binarySearch(value)), absent);
+    }
+
+    private long getOrAbsent(int index, long absent) {
+        return inRange(index) ? data[index] : absent;
+    }
+
+    public long firstLong() {
+        checkNotEmpty();
+        return data[firstIndex()];
+    }
+
+    public long lastLong() {
+        checkNotEmpty();
+        return data[lastIndex()];
+    }
+
+    public LongArraySet subSet(long fromElement, boolean fromInclusive, long toElement, boolean toInclusive) {
+        return (LongArraySet) subSet((Long) fromElement, fromInclusive, (Long) toElement, toInclusive);
+    }
+
+    public LongArraySet headSet(long toElement, boolean inclusive) {
+        return (LongArraySet) headSet((Long) toElement, inclusive);
+    }
+
+    public LongArraySet tailSet(long fromElement, boolean inclusive) {
+        return (LongArraySet) tailSet((Long) fromElement, inclusive);
+    }
+
+    @Override
+    public LongArraySet descendingSet() {
+        return (LongArraySet) super.descendingSet();
+    }
+
+    @Override
+    public PrimitiveIterator.OfLong iterator() {
+        return new LongIterator(reversed);
+    }
+
+    @Override
+    public PrimitiveIterator.OfLong descendingIterator() {
+        return new LongIterator(!reversed);
+    }
+
+    private class LongIterator extends ArrayIterator implements PrimitiveIterator.OfLong {
+        LongIterator(boolean backwards) {
+            super(backwards);
+        }
+
+        @Override
+        public long nextLong() {
+            return data[nextIndex()];
+        }
+    }
+
+    @Override
+    public Spliterator.OfLong spliterator() {
+        return new LongSpliterator(from, to);
+    }
+
+    private class LongSpliterator extends ArraySpliterator implements Spliterator.OfLong {
+        LongSpliterator(int low, int high) {
+            super(low, high);
+        }
+
+        @Override
+        LongSpliterator split(int low, int high) {
+            return new LongSpliterator(low, high);
+        }
+
+        @Override
+        public boolean tryAdvance(LongConsumer action) {
+            Objects.requireNonNull(action);
+            if (low >= high) {
+                return false;
+            }
+            action.accept(data[nextIndex()]);
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(LongConsumer action) {
+            Objects.requireNonNull(action);
+            while (low < high) {
+                action.accept(data[nextIndex()]);
+            }
+        }
+
+        @Override
+        public LongSpliterator trySplit() {
+            return (LongSpliterator) super.trySplit();
+        }
+    }
+
+    public LongStream longStream() {
+        return StreamSupport.longStream(spliterator(), false);
+    }
+
+    public long[] toLongArray() {
+        return longStream().toArray();
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 0;
+        for (int i = from; i < to; i++) {
+            hash += Long.hashCode(data[i]);
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,226 @@
+package info.kgeorgiy.ja.trofimov.arrayset;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Objects;
+
+/*
+Immutable set in natural order read in place from a memory-mapped file, with the views of `ArraySet`.
+Opening a file maps it read-only and checks the header, nothing is deserialized or sorted;
+the pages come from the OS page cache and are shared by all processes mapping the same file.
+
+A file is a header of four ints: magic, version, key type and size, followed by the keys.
+Longs are 8 bytes each. Strings are an int table of size + 1 offsets and then their UTF-8 bytes,
+so any key is found in O(1) and a lookup is a binary search right over the mapping.
+A mapping is a `ByteBuffer`, so files are limited to 2 GB.
+ */
+public abstract class MappedArraySet<T> extends AbstractArraySet<T> {
+    private static final int MAGIC = 0x41534554;
+    private static final int VERSION = 1;
+    private static final int LONGS = 1;
+    private static final int STRINGS = 2;
+    private static final int HEADER = 16;
+
+    final ByteBuffer buffer;
+
+    MappedArraySet(ByteBuffer buffer, int from, int to, boolean reversed, Comparator<? super T> viewComparator) {
+        super(from, to, reversed, null, viewComparator);
+        this.buffer = buffer;
+    }
+
+    public static void writeLongs(Path file, Collection<? extends Long> values) throws IOException {
+        long[] sorted = new LongArraySet(values).toLongArray();
+        if (HEADER + 8L * sorted.length > Integer.MAX_VALUE) {
+            throw new IOException("Longs take more than 2 GB");
+        }
+        try (DataOutputStream out = create(file, LONGS, sorted.length)) {
+            for (long value : sorted) {
+                out.writeLong(value);
+            }
+        }
+    }
+
+    public static void writeStrings(Path file, Collection<? extends String> values) throws IOException {
+        Object[] sorted = new ArraySet<String>(values).toArray();
+        byte[][] encoded = new byte[sorted.length][];
+        long offset = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            encoded[i] = Utf8.encode((String) sorted[i]);
+            offset += encoded[i].length;
+        }
+        if (HEADER + 4L * (sorted.length + 1) + offset > Integer.MAX_VALUE) {
+            throw new IOException("Strings take more than 2 GB");
+        }
+        try (DataOutputStream out = create(file, STRINGS, sorted.length)) {
+            offset = 0;
+            out.writeInt(0);
+            for (byte[] bytes : encoded) {
+                offset += bytes.length;
+                out.writeInt((int) offset);
+            }
+            for (byte[] bytes : encoded) {
+                out.write(bytes);
+            }
+        }
+    }
+
+    private static DataOutputStream create(Path file, int type, int size) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)));
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(type);
+        out.writeInt(size);
+        return out;
+    }
+
+    public static MappedArraySet<Long> openLongs(Path file) throws IOException {
+        ByteBuffer buffer = map(file, LONGS);
+        int size = buffer.getInt(12);
+        if (buffer.limit() != HEADER + 8L * size) {
+            throw new IOException("Truncated file " + file);
+        }
+        return new Longs(buffer, 0, size, false, null);
+    }
+
+    // checks the whole offset table, so a corrupt file fails here and not on a lookup
+    public static MappedArraySet<String> openStrings(Path file) throws IOException {
+        ByteBuffer buffer = map(file, STRINGS);
+        int size = buffer.getInt(12);
+        long base = HEADER + 4L * size + 4;
+        if (size < 0 || buffer.limit() < base) {
+            throw new IOException("Truncated file " + file);
+        }
+        if (buffer.getInt(HEADER) != 0) {
+            throw new IOException("Strings don't start at offset 0 in " + file);
+        }
+        for (int i = 1; i <= size; i++) {
+            if (buffer.getInt(HEADER + 4 * i) < buffer.getInt(HEADER + 4 * (i - 1))) {
+                throw new IOException("Decreasing string offset " + i + " in " + file);
+            }
+        }
+        if (buffer.limit() != base + buffer.getInt((int) base - 4)) {
+            throw new IOException("Truncated file " + file);
+        }
+        return new Strings(buffer, (int) base, 0, size, false, null);
+    }
+
+    private static ByteBuffer map(Path file, int type) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("File is larger than 2 GB: " + file);
+            }
+            // the mapping stays valid after the channel is closed
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.limit() < HEADER || buffer.getInt(0) != MAGIC) {
+                throw new IOException("Not an array set file: " + file);
+            }
+            if (buffer.getInt(4) != VERSION) {
+                throw new IOException("Unsupported version " + buffer.getInt(4) + " of " + file);
+            }
+            if (buffer.getInt(8) != type) {
+                throw new IOException("Wrong key type " + buffer.getInt(8) + " of " + file);
+            }
+            return buffer;
+        }
+    }
+
+    private static final class Longs extends MappedArraySet<Long> {
+        Longs(ByteBuffer buffer, int from, int to, boolean reversed, Comparator<? super Long> viewComparator) {
+            super(buffer, from, to, reversed, viewComparator);
+        }
+
+        @Override
+        Longs view(int from, int to, boolean reversed, Comparator<? super Long> viewComparator) {
+            return new Longs(buffer, from, to, reversed, viewComparator);
+        }
+
+        private long longAt(int index) {
+            return buffer.getLong(HEADER + 8 * index);
+        }
+
+        @Override
+        Long elementAt(int index) {
+            return longAt(index);
+        }
+
+        @Override
+        int binarySearch(Object value) {
+            long key = (Long) value;
+            int low = from;
+            int high = to - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                long element = longAt(middle);
+                if (element < key) {
+                    low = middle + 1;
+                } else if (element > key) {
+                    high = middle - 1;
+                } else {
+                    return middle;
+                }
+            }
+            return -1 - low;
+        }
+    }
+
+    private static final class Strings extends MappedArraySet<String> {
+        // offset of the UTF-8 bytes
+        private final int base;
+
+        Strings(ByteBuffer buffer, int base, int from, int to, boolean reversed, Comparator<? super String> viewComparator) {
+            super(buffer, from, to, reversed, viewComparator);
+            this.base = base;
+        }
+
+        @Override
+        Strings view(int from, int to, boolean reversed, Comparator<? super String> viewComparator) {
+            return new Strings(buffer, base, from, to, reversed, viewComparator);
+        }
+
+        private int offset(int index) {
+            return buffer.getInt(HEADER + 4 * index);
+        }
+
+        @Override
+        String elementAt(int index) {
+            byte[] bytes = new byte[offset(index + 1) - offset(index)];
+            buffer.get(base + offset(index), bytes);
+            return Utf8.decode(bytes, 0, bytes.length);
+        }
+
+        // compares the raw bytes, reading them into a reused buffer
+        @Override
+        int binarySearch(Object value) {
+            String key = Objects.requireNonNull((String) value);
+            byte[] bytes = new byte[64];
+            int low = from;
+            int high = to - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                int start = offset(middle);
+                int length = offset(middle + 1) - start;
+                if (length > bytes.length) {
+                    bytes = new byte[Math.max(length, 2 * bytes.length)];
+                }
+                buffer.get(base + start, bytes, 0, length);
+                int comparison = Utf8.compare(bytes, 0, length, key);
+                if (comparison < 0) {
+                    low = middle + 1;
+                } else if (comparison > 0) {
+                    high = middle - 1;
+                } else {
+                    return middle;
+                }
+            }
+            return -1 - low;
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package info.kgeorgiy.ja.trofimov.arrayset;
+
+import java.nio.charset.StandardCharsets;
+
+/*
+UTF-8 for the compact string sets.
+Encoding rejects unpaired surrogates, which UTF-8 can't represent and `getBytes` would replace.
+Comparison of encoded bytes with a String follows `String.compareTo`, that is UTF-16 chars
+rather than code points, so sets keep the natural order of String.
+ */
+final class Utf8 {
+    private Utf8() {
+    }
+
+    static byte[] encode(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (Character.isSurrogate(c)) {
+                if (!Character.isHighSurrogate(c) || i + 1 == value.length()
+                        || !Character.isLowSurrogate(value.charAt(i + 1))) {
+                    throw new IllegalArgumentException("Unpaired surrogate at index " + i);
+                }
+                i++;
+            }
+        }
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    static String decode(byte[] bytes, int offset, int length) {
+        return new String(bytes, offset, length, StandardCharsets.UTF_8);
+    }
+
+    // sign of the comparison of the decoded bytes[offset, offset + length) with value
+    static int compare(byte[] bytes, int offset, int length, String value) {
+        int end = offset + length;
+        int i = offset;
+        int j = 0;
+        while (i < end && j < value.length()) {
+            int b = bytes[i];
+            if (b >= 0) {
+                if (b != value.charAt(j)) {
+                    return b - value.charAt(j);
+                }
+                i++;
+                j++;
+                continue;
+            }
+            int codePoint;
+            if ((b & 0xE0) == 0xC0) {
+                codePoint = (b & 0x1F) << 6 | bytes[i + 1] & 0x3F;
+                i += 2;
+            } else if ((b & 0xF0) == 0xE0) {
+                codePoint = (b & 0x0F) << 12 | (bytes[i + 1] & 0x3F) << 6 | bytes[i + 2] & 0x3F;
+                i += 3;
+            } else {
+                codePoint = (b & 0x07) << 18 | (bytes[i + 1] & 0x3F) << 12 | (bytes[i + 2] & 0x3F) << 6 | bytes[i + 3] & 0x3F;
+                i += 4;
+            }
+            if (Character.isBmpCodePoint(codePoint)) {
+                if (codePoint != value.charAt(j)) {
+                    return codePoint - value.charAt(j);
+                }
+                j++;
+                continue;
+            }
+            char high = Character.highSurrogate(codePoint);
+            if (high != value.charAt(j)) {
+                return high - value.charAt(j);
+            }
+            if (++j == value.length()) {
+                // the low surrogate is left
+                return 1;
+            }
+            char low = Character.lowSurrogate(codePoint);
+            if (low != value.charAt(j)) {
+                return low - value.charAt(j);
+            }
+            j++;
+        }
+        return (i < end ? 1 : 0) - (j < value.length() ? 1 : 0);
+    }
+}
@@ -0,0 +1,80 @@
+package info.kgeorgiy.ja.trofimov.walk;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Path;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/*
+Hashes and chunks files in parallel, but writes lines in the walk order:
+every line waits in `pending` until all lines before it are ready.
+Chunks are counted in the given statistics, which the caller reports once the walk is finished.
+ */
+public class ChunkFileVisitor extends ShaFileVisitor {
+    private record Line(CompletableFuture<String> hash, String fileName) {
+    }
+
+    private final ChunkStatistics statistics;
+    private final Queue<Line> pending = new ArrayDeque<>();
+    private final int maxPending;
+    private final ExecutorService executor;
+
+    ChunkFileVisitor(BufferedWriter bufferedWriter, PathFilter pathFilter, ChunkStatistics statistics) {
+        super(bufferedWriter, false, pathFilter);
+        this.statistics = statistics;
+        int threads = Runtime.getRuntime().availableProcessors();
+        this.maxPending = threads * 16;
+        this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "chunk-walk");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public FileVisitResult calculateHash(Path file, long size) throws IOException {
+        addLine(CompletableFuture.supplyAsync(() -> {
+            try {
+                return statistics.hashFile(file);
+            } catch (NoSuchAlgorithmException | IOException e) {
+                return zeroHash;
+            }
+        }, executor), file.toString());
+        return FileVisitResult.CONTINUE;
+    }
+
+    @Override
+    public void writeHash(String hash, String fileName) throws IOException {
+        addLine(CompletableFuture.completedFuture(hash), fileName);
+    }
+
+    private void addLine(CompletableFuture<String> hash, String fileName) throws IOException {
+        pending.add(new Line(hash, fileName));
+        writeReady(pending.size() > maxPending);
+    }
+
+    private void writeReady(boolean waitFirst) throws IOException {
+        while (!pending.isEmpty() && (waitFirst || pending.peek().hash().isDone())) {
+            Line line = pending.remove();
+            super.writeHash(line.hash().join(), line.fileName());
+            waitFirst = false;
+        }
+    }
+
+    @Override
+    public void finish() throws IOException {
+        try {
+            while (!pending.isEmpty()) {
+                writeReady(true);
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package info.kgeorgiy.ja.trofimov.walk;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+Content-defined chunking (FastCDC: gear rolling hash, normalized chunking)
+of every hashed file, counting how many chunk bytes are shared across the whole walk.
+Chunks are identified by the first 64 bits of their SHA-256.
+Safe to use from several threads at once.
+ */
+public class ChunkStatistics {
+    private static final int MIN_SIZE = 2 * 1024;
+    private static final int AVERAGE_SIZE = 8 * 1024;
+    private static final int MAX_SIZE = 64 * 1024;
+
+    // 15 and 11 one-bits: harder to cut before the average size, easier after it
+    private static final long MASK_SMALL = 0x0003590703530000L;
+    private static final long MASK_LARGE = 0x0000d90003530000L;
+
+    private static final long[] GEAR = new SplittableRandom(0x6765617248617368L).longs(256).toArray();
+
+    private final ConcurrentLongSet fingerprints = new ConcurrentLongSet();
+    private final LongAdder totalChunks = new LongAdder();
+    private final LongAdder totalBytes = new LongAdder();
+    private final LongAdder uniqueChunks = new LongAdder();
+    private final LongAdder uniqueBytes = new LongAdder();
+
+    /*
+    Returns SHA-256 of the whole file; the file is read once for both the hash and the chunks.
+     */
+    public String hashFile(Path file) throws NoSuchAlgorithmException, IOException {
+        MessageDigest fileDigest = MessageDigest.getInstance("SHA-256");
+        MessageDigest chunkDigest = MessageDigest.getInstance("SHA-256");
+        byte[] buffer = new byte[MAX_SIZE];
+        long fingerprint = 0;
+        int chunkSize = 0;
+        try (InputStream inputStream = Files.newInputStream(file)) {
+            int readSize;
+            while ((readSize = inputStream.read(buffer)) != -1) {
+                fileDigest.update(buffer, 0, readSize);
+                int chunkStart = 0;
+                for (int i = 0; i < readSize; i++) {
+                    if (++chunkSize <= MIN_SIZE) {
+                        continue;
+                    }
+                    fingerprint = (fingerprint << 1) + GEAR[buffer[i] & 0xff];
+                    long mask = chunkSize < AVERAGE_SIZE ? MASK_SMALL : MASK_LARGE;
+                    if ((fingerprint & mask) == 0 || chunkSize >= MAX_SIZE) {
+                        chunkDigest.update(buffer, chunkStart, i + 1 - chunkStart);
+                        addChunk(chunkDigest.digest(), chunkSize);
+                        chunkStart = i + 1;
+                        chunkSize = 0;
+                        fingerprint = 0;
+                    }
+                }
+                chunkDigest.update(buffer, chunkStart, readSize - chunkStart);
+            }
+        }
+        if (chunkSize > 0) {
+            addChunk(chunkDigest.digest(), chunkSize);
+        }
+        return ShaFileVisitor.toHex(fileDigest.digest());
+    }
+
+    private void addChunk(byte[] digest, int size) {
+        long id = 0;
+        for (int i = 0; i < Long.BYTES; i++) {
+            id = (id << 8) | (digest[i] & 0xff);
+        }
+        totalChunks.increment();
+        totalBytes.add(size);
+        if (fingerprints.add(id)) {
+            uniqueChunks.increment();
+            uniqueBytes.add(size);
+        }
+    }
+
+    @Override
+    public String toString() {
+        long total = totalBytes.sum();
+        long unique = uniqueBytes.sum();
+        return String.format("Chunks: %d total (%d bytes), %d unique (%d bytes), dedup saves %.2f%%",
+                totalChunks.sum(), total, uniqueChunks.sum(), unique,
+                total == 0 ? 0.0 : 100.0 * (total - unique) / total);
+    }
+}
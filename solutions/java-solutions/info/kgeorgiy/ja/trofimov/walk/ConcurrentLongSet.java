@@ -0,0 +1,84 @@
+package info.kgeorgiy.ja.trofimov.walk;
+
+/*
+Compact set of `long`s for many writer threads:
+striped open-addressing tables of raw longs, kept between a quarter and a half full,
+so 16-32 bytes per element instead of a boxed map node.
+ */
+class ConcurrentLongSet {
+    private static final int SEGMENTS_BITS = 6;
+
+    private final Segment[] segments = new Segment[1 << SEGMENTS_BITS];
+
+    ConcurrentLongSet() {
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = new Segment();
+        }
+    }
+
+    private static long mix(long value) {
+        long h = value * 0x9E3779B97F4A7C15L;
+        return h ^ (h >>> 32);
+    }
+
+    // true if value was not in the set
+    boolean add(long value) {
+        long h = mix(value);
+        return segments[(int) (h >>> (Long.SIZE - SEGMENTS_BITS))].add(value, (int) h);
+    }
+
+    long size() {
+        long size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    private static class Segment {
+        // 0 marks an empty slot, so zero itself is kept aside
+        private long[] table = new long[16];
+        private int used = 0;
+        private boolean hasZero = false;
+
+        synchronized boolean add(long value, int h) {
+            if (value == 0) {
+                boolean added = !hasZero;
+                hasZero = true;
+                return added;
+            }
+            int mask = table.length - 1;
+            for (int i = h & mask; ; i = (i + 1) & mask) {
+                if (table[i] == value) {
+                    return false;
+                }
+                if (table[i] == 0) {
+                    table[i] = value;
+                    if (++used * 2 > table.length) {
+                        grow();
+                    }
+                    return true;
+                }
+            }
+        }
+
+        private void grow() {
+            long[] old = table;
+            table = new long[old.length * 2];
+            int mask = table.length - 1;
+            for (long value : old) {
+                if (value != 0) {
+                    int i = (int) mix(value) & mask;
+                    while (table[i] != 0) {
+                        i = (i + 1) & mask;
+                    }
+                    table[i] = value;
+                }
+            }
+        }
+
+        synchronized int size() {
+            return used + (hasZero ? 1 : 0);
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package info.kgeorgiy.ja.trofimov.walk;
+
+import java.nio.file.Path;
+
+/**
+ * SHA-256 of a file, as a lowercase hex string.
+ *
+ * @param path requested path
+ * @param hash 64 hex digits
+ */
+public record FileHash(Path path, String hash) {
+    @Override
+    public String toString() {
+        return hash + " " + path;
+    }
+}
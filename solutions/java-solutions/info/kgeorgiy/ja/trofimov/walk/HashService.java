@@ -0,0 +1,160 @@
+package info.kgeorgiy.ja.trofimov.walk;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * In-process file hashing on top of the {@link ShaFileVisitor} hashing core.
+ * <p>
+ * At most {@code threads} files are hashed at once. Concurrent requests for the same path
+ * share one computation, and results are cached until the file's size, modification time
+ * or file key changes.
+ * <p>
+ * The cache keeps at most {@code maxCached} paths, {@value #DEFAULT_MAX_CACHED} by default;
+ * beyond that the least recently requested path is forgotten, so a long-lived service
+ * doesn't grow with every path it has ever hashed.
+ */
+public class HashService implements AutoCloseable {
+    private record CachedHash(long size, FileTime lastModified, Object fileKey, String hash) {
+        boolean matches(BasicFileAttributes attrs) {
+            return size == attrs.size()
+                    && lastModified.equals(attrs.lastModifiedTime())
+                    && Objects.equals(fileKey, attrs.fileKey());
+        }
+    }
+
+    /**
+     * Number of paths cached by {@link #HashService(int)}.
+     */
+    public static final int DEFAULT_MAX_CACHED = 1 << 16;
+
+    private final ExecutorService executor;
+    private final ConcurrentMap<Path, CompletableFuture<FileHash>> inFlight = new ConcurrentHashMap<>();
+    // LRU by access order; a lookup is negligible next to reading the file, so one lock is enough
+    private final Map<Path, CachedHash> cache;
+
+    /**
+     * Creates a service with its own pool of hashing threads, caching {@value #DEFAULT_MAX_CACHED} paths.
+     *
+     * @param threads maximal number of files hashed at once
+     * @throws IllegalArgumentException if {@code threads} is less than 1
+     */
+    public HashService(int threads) {
+        this(threads, DEFAULT_MAX_CACHED);
+    }
+
+    /**
+     * Creates a service with its own pool of hashing threads.
+     *
+     * @param threads   maximal number of files hashed at once
+     * @param maxCached maximal number of cached paths, 0 disables the cache
+     * @throws IllegalArgumentException if {@code threads} is less than 1 or {@code maxCached} is negative
+     */
+    public HashService(int threads, int maxCached) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("At least one thread must be specified.");
+        }
+        if (maxCached < 0) {
+            throw new IllegalArgumentException("Cache size can't be negative.");
+        }
+        this.cache = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Path, CachedHash> eldest) {
+                return size() > maxCached;
+            }
+        });
+        this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "hash-service");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Hashes a regular file.
+     *
+     * @param path file to hash
+     * @return future completed with the hash, or exceptionally with {@link UncheckedIOException}
+     * if the file can't be read
+     */
+    public CompletableFuture<FileHash> hash(Path path) {
+        Objects.requireNonNull(path);
+        CompletableFuture<FileHash> future = inFlight.computeIfAbsent(path,
+                key -> CompletableFuture.supplyAsync(() -> calculate(key), executor));
+        future.whenComplete((result, e) -> inFlight.remove(path, future));
+        // callers may cancel their copy without affecting the others
+        return future.copy();
+    }
+
+    /**
+     * Hashes several files, in parallel.
+     *
+     * @param paths files to hash
+     * @return future completed with hashes in the order of {@code paths},
+     * or exceptionally if any of the files can't be read
+     */
+    public CompletableFuture<List<FileHash>> hashAll(Collection<? extends Path> paths) {
+        List<CompletableFuture<FileHash>> futures = paths.stream().map(this::hash).toList();
+        return CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new))
+                .thenApply(ignored -> futures.stream().map(CompletableFuture::join).toList());
+    }
+
+    private FileHash calculate(Path path) {
+        try {
+            BasicFileAttributes before = Files.readAttributes(path, BasicFileAttributes.class);
+            CachedHash cached = cache.get(path);
+            if (cached != null && cached.matches(before)) {
+                return new FileHash(path, cached.hash());
+            }
+
+            String hash = ShaFileVisitor.hashFile(path,
+                    before.isRegularFile() ? before.size() : ShaFileVisitor.UNKNOWN_SIZE);
+            CachedHash calculated = new CachedHash(before.size(), before.lastModifiedTime(), before.fileKey(), hash);
+            // don't remember a hash of a file that was changing while we read it
+            if (calculated.matches(Files.readAttributes(path, BasicFileAttributes.class))) {
+                cache.put(path, calculated);
+            } else {
+                cache.remove(path);
+            }
+            return new FileHash(path, hash);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (NoSuchAlgorithmException e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    /**
+     * Forgets a cached hash of {@code path}.
+     *
+     * @param path file to forget
+     */
+    public void invalidate(Path path) {
+        cache.remove(path);
+    }
+
+    /**
+     * Stops hashing threads. Pending requests are completed first.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+}
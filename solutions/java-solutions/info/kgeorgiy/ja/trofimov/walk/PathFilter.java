@@ -0,0 +1,55 @@
+package info.kgeorgiy.ja.trofimov.walk;
+
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+Include/exclude rules for the walk, compiled once into `PathMatcher`s.
+A pattern is `glob:...` or `regex:...` (glob by default) and is matched
+against both the walked path and its file name, so `node_modules` and `**.class` both work.
+Excludes prune whole directories, includes only select files.
+ */
+public class PathFilter {
+    private final List<PathMatcher> includes = new ArrayList<>();
+    private final List<PathMatcher> excludes = new ArrayList<>();
+
+    public PathFilter include(String pattern) {
+        includes.add(compile(pattern));
+        return this;
+    }
+
+    public PathFilter exclude(String pattern) {
+        excludes.add(compile(pattern));
+        return this;
+    }
+
+    private static PathMatcher compile(String pattern) {
+        boolean hasSyntax = pattern.startsWith("glob:") || pattern.startsWith("regex:");
+        return FileSystems.getDefault().getPathMatcher(hasSyntax ? pattern : "glob:" + pattern);
+    }
+
+    private static boolean matchesAny(List<PathMatcher> matchers, Path path) {
+        Path name = path.getFileName();
+        for (PathMatcher matcher : matchers) {
+            if (matcher.matches(path) || (name != null && matcher.matches(name))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean isExcluded(Path path) {
+        return !excludes.isEmpty() && matchesAny(excludes, path);
+    }
+
+    public boolean acceptsDirectory(Path dir) {
+        return !isExcluded(dir);
+    }
+
+    public boolean acceptsFile(Path file) {
+        return (includes.isEmpty() || matchesAny(includes, file)) && !isExcluded(file);
+    }
+}
@@ -8,16 +8,24 @@ import java.nio.file.Files;
 import java.nio.file.InvalidPathException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.function.Function;
 
 public class RecursiveWalk {
     interface WalkOperation {
         void walk(Path path, ShaFileVisitor shaFileVisitor) throws IOException;
     }
 
-    public static void walk(String[] args, WalkOperation walkOperation) {
+    public static boolean walk(String[] args, WalkOperation walkOperation) {
+        return walk(args, walkOperation, ShaFileVisitor::new);
+    }
+
+    // true if all input files were walked, errors are reported to stderr
+    public static boolean walk(String[] args, WalkOperation walkOperation,
+                               Function<BufferedWriter, ShaFileVisitor> visitorFactory) {
         if (args == null || args.length != 2 || args[0] == null || args[1] == null) {
             System.err.println("Usage: java Walk <input file> <output file>");
-            return;
+            return false;
         }
 
         Path input, output;
@@ -26,7 +34,7 @@ public class RecursiveWalk {
             output = Paths.get(args[1]);
         } catch (InvalidPathException e) {
             System.err.println("Invalid input or output file path: " + e.getMessage());
-            return;
+            return false;
         }
 
         if (output.getParent() != null) {
@@ -34,14 +42,14 @@ public class RecursiveWalk {
                 Files.createDirectories(output.getParent());
             } catch (IOException e) {
                 System.err.println("Can't create a dir for output file: " + e.getMessage());
-                return;
+                return false;
             }
         }
 
         try (BufferedReader reader = Files.newBufferedReader(input, StandardCharsets.UTF_8);
              BufferedWriter writer = Files.newBufferedWriter(output, StandardCharsets.UTF_8)
         ) {
-            ShaFileVisitor shaFileVisitor = new ShaFileVisitor(writer);
+            ShaFileVisitor shaFileVisitor = visitorFactory.apply(writer);
 
             for (String fileName = reader.readLine(); fileName != null; fileName = reader.readLine()) {
                 try {
@@ -51,12 +59,66 @@ public class RecursiveWalk {
                     shaFileVisitor.writeHash(shaFileVisitor.zeroHash, fileName);
                 }
             }
+            shaFileVisitor.finish();
+            return true;
         } catch (IOException | SecurityException e) {
             System.err.println("Can't open input or output file or read from input file: " + e.getMessage());
+            return false;
         }
     }
 
+    // the pattern at `index`, which must leave the two file names after it
+    private static String pattern(String[] args, int index) {
+        if (index >= args.length - 2 || args[index] == null) {
+            throw new IllegalArgumentException("Missing pattern after " + args[index - 1]);
+        }
+        return args[index];
+    }
+
+    /*
+    Options go before the file names:
+    -dirs              also writes a Merkle hash for every directory, as `<hash> <dir>/`
+    -include <pattern> hashes only files matching `glob:...` or `regex:...` (glob by default)
+    -exclude <pattern> skips matching files and whole matching directories
+    -chunks            hashes files in parallel and prints content-defined chunk statistics,
+                       to estimate deduplication across all walked files; can't be used with -dirs
+     */
     public static void main(String[] args) {
-        walk(args, Files::walkFileTree);
+        boolean directoryHashes = false;
+        boolean chunks = false;
+        PathFilter pathFilter = new PathFilter();
+        int options = 0;
+        try {
+            for (; args != null && options < args.length - 2; options++) {
+                if (args[options] == null) {
+                    throw new IllegalArgumentException("Missing option " + (options + 1));
+                }
+                switch (args[options]) {
+                    case "-dirs" -> directoryHashes = true;
+                    case "-chunks" -> chunks = true;
+                    case "-include" -> pathFilter.include(pattern(args, ++options));
+                    case "-exclude" -> pathFilter.exclude(pattern(args, ++options));
+                    default -> throw new IllegalArgumentException("Unknown option " + args[options]);
+                }
+            }
+            if (directoryHashes && chunks) {
+                throw new IllegalArgumentException("-dirs and -chunks can't be used together");
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println("Invalid options: " + e.getMessage());
+            System.err.println("Usage: java RecursiveWalk [-dirs | -chunks] [-include <pattern>] [-exclude <pattern>] "
+                    + "<input file> <output file>");
+            return;
+        }
+
+        final boolean finalDirectoryHashes = directoryHashes;
+        ChunkStatistics statistics = chunks ? new ChunkStatistics() : null;
+        boolean walked = walk(args == null ? null : Arrays.copyOfRange(args, options, args.length), Files::walkFileTree,
+                writer -> statistics != null
+                        ? new ChunkFileVisitor(writer, pathFilter, statistics)
+                        : new ShaFileVisitor(writer, finalDirectoryHashes, pathFilter));
+        if (walked && statistics != null) {
+            System.out.println(statistics);
+        }
     }
 }
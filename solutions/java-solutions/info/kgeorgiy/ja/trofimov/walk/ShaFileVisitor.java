@@ -2,27 +2,64 @@ package info.kgeorgiy.ja.trofimov.walk;
 
 import java.io.BufferedInputStream;
 import java.io.BufferedWriter;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
+import java.nio.file.LinkOption;
 import java.nio.file.Path;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.TreeMap;
 
 public class ShaFileVisitor extends SimpleFileVisitor<Path> {
     private final BufferedWriter bufferedWriter;
+    private final boolean directoryHashes;
+    private final PathFilter pathFilter;
+
+    /*
+    Children of every directory on the current walk path: name -> hash.
+    Sub-directory names end with '/', so a hash doesn't depend on the platform separator.
+     */
+    private final Deque<Map<String, String>> directories = new ArrayDeque<>();
 
     ShaFileVisitor(BufferedWriter bufferedWriter) {
+        this(bufferedWriter, false, new PathFilter());
+    }
+
+    ShaFileVisitor(BufferedWriter bufferedWriter, boolean directoryHashes, PathFilter pathFilter) {
         this.bufferedWriter = bufferedWriter;
+        this.directoryHashes = directoryHashes;
+        this.pathFilter = pathFilter;
     }
 
     public final String zeroHash = "0".repeat(64);
 
+    static final long UNKNOWN_SIZE = -1;
+    private static final int SMALL_FILE_SIZE = 8 * 1024;
+    private static final ThreadLocal<ByteBuffer> SMALL_FILE_BUFFER =
+            ThreadLocal.withInitial(() -> ByteBuffer.allocate(SMALL_FILE_SIZE));
+    private static final ThreadLocal<MessageDigest> SMALL_FILE_DIGEST = new ThreadLocal<>();
+    private static final HexFormat HEX = HexFormat.of();
+
     public String calculateHashFromStream(InputStream inputStream) throws NoSuchAlgorithmException, IOException {
+        return hashStream(inputStream);
+    }
+
+    /*
+    Hashing core shared by the walks and `HashService`.
+     */
+    static String hashStream(InputStream inputStream) throws NoSuchAlgorithmException, IOException {
         MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
         int bufferSize = 4096;
         byte[] buffer = new byte[bufferSize];
@@ -30,16 +67,66 @@ public class ShaFileVisitor extends SimpleFileVisitor<Path> {
         while ((readSize = inputStream.read(buffer)) != -1) {
             messageDigest.update(buffer, 0, readSize);
         }
-        return String.format("%064x", new BigInteger(1, messageDigest.digest()));
+        return toHex(messageDigest.digest());
+    }
+
+    static String hashFile(Path file) throws NoSuchAlgorithmException, IOException {
+        try (InputStream inputStream = new BufferedInputStream(Files.newInputStream(file))) {
+            return hashStream(inputStream);
+        }
+    }
+
+    /*
+    `size` is the size of a regular file from its attributes, or `UNKNOWN_SIZE`.
+    A small file is read by `FileChannel.read` into a per-thread buffer
+    and digested by a per-thread `MessageDigest`, without any stream objects.
+    The size only selects this path: the file is read to its end, so a file that has grown
+    or reports no size, as those in /proc do, is still hashed whole.
+     */
+    static String hashFile(Path file, long size) throws NoSuchAlgorithmException, IOException {
+        if (size < 0 || size > SMALL_FILE_SIZE) {
+            return hashFile(file);
+        }
+
+        MessageDigest messageDigest = SMALL_FILE_DIGEST.get();
+        if (messageDigest == null) {
+            messageDigest = MessageDigest.getInstance("SHA-256");
+            SMALL_FILE_DIGEST.set(messageDigest);
+        }
+        messageDigest.reset();
+        ByteBuffer buffer = SMALL_FILE_BUFFER.get();
+        try (FileChannel channel = FileChannel.open(file)) {
+            while (true) {
+                buffer.clear();
+                while (buffer.hasRemaining() && channel.read(buffer) != -1) {
+                    // a short read is possible, the buffer is filled up to the end of the file
+                }
+                messageDigest.update(buffer.array(), 0, buffer.position());
+                if (buffer.hasRemaining()) {
+                    break;
+                }
+                // the file is larger than the buffer after all, the rest is streamed through it
+            }
+        }
+        return toHex(messageDigest.digest());
+    }
+
+    static String toHex(byte[] digest) {
+        return HEX.formatHex(digest);
     }
 
     public FileVisitResult calculateHash(Path file) throws IOException {
+        return calculateHash(file, UNKNOWN_SIZE);
+    }
+
+    public FileVisitResult calculateHash(Path file, long size) throws IOException {
         String hash = zeroHash;
-        try (InputStream inputStream = new BufferedInputStream(Files.newInputStream(file))) {
-            hash = calculateHashFromStream(inputStream);
+        try {
+            hash = hashFile(file, size);
         } catch (NoSuchAlgorithmException | IOException ignored) {
         } finally {
             writeHash(hash, file.toString());
+            addChild(file, hash, false);
         }
         return FileVisitResult.CONTINUE;
     }
@@ -49,14 +136,79 @@ public class ShaFileVisitor extends SimpleFileVisitor<Path> {
         bufferedWriter.newLine();
     }
 
+    // called once all input files are walked
+    public void finish() throws IOException {
+    }
+
+    private void addChild(Path file, String hash, boolean isDirectory) {
+        Map<String, String> parent = directories.peek();
+        if (parent != null) {
+            Path name = file.getFileName();
+            parent.put((name == null ? "" : name.toString()) + (isDirectory ? "/" : ""), hash);
+        }
+    }
+
+    /*
+    Merkle hash of a directory: SHA-256 over `name \0 hash \n` of its children, sorted by name.
+    Two directories with equal hashes have equal contents, so a compare tool can skip the whole subtree.
+     */
+    private String calculateDirectoryHash(Map<String, String> children) {
+        try {
+            MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
+            for (Map.Entry<String, String> child : children.entrySet()) {
+                messageDigest.update(child.getKey().getBytes(StandardCharsets.UTF_8));
+                messageDigest.update((byte) 0);
+                messageDigest.update(child.getValue().getBytes(StandardCharsets.US_ASCII));
+                messageDigest.update((byte) '\n');
+            }
+            return toHex(messageDigest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            return zeroHash;
+        }
+    }
+
+    @Override
+    public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+        if (!pathFilter.acceptsDirectory(dir)) {
+            return FileVisitResult.SKIP_SUBTREE;
+        }
+        if (directoryHashes) {
+            directories.push(new TreeMap<>());
+        }
+        return FileVisitResult.CONTINUE;
+    }
+
     @Override
     public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
-        return calculateHash(file);
+        if (!pathFilter.acceptsFile(file)) {
+            return FileVisitResult.CONTINUE;
+        }
+        // the walk doesn't follow links, so the size of a link is the length of its target path
+        return calculateHash(file, attrs.isRegularFile() && !attrs.isSymbolicLink() ? attrs.size() : UNKNOWN_SIZE);
     }
 
     @Override
     public FileVisitResult visitFileFailed(Path file, IOException exc) throws IOException {
+        // a directory that can't be opened is filtered as a directory, anything else as a file
+        boolean accepted = Files.isDirectory(file, LinkOption.NOFOLLOW_LINKS)
+                ? pathFilter.acceptsDirectory(file)
+                : pathFilter.acceptsFile(file);
+        if (!accepted) {
+            return FileVisitResult.CONTINUE;
+        }
         writeHash(zeroHash, file.toString());
+        addChild(file, zeroHash, false);
+        return FileVisitResult.CONTINUE;
+    }
+
+    @Override
+    public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+        if (directoryHashes) {
+            Map<String, String> children = directories.pop();
+            String hash = exc == null ? calculateDirectoryHash(children) : zeroHash;
+            writeHash(hash, dir + File.separator);
+            addChild(dir, hash, true);
+        }
         return FileVisitResult.CONTINUE;
     }
 }